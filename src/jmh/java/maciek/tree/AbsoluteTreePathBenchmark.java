@@ -0,0 +1,104 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link AbsoluteTreePath} allocation and lookup.
+ * <p>
+ * The {@code list*} benchmarks use boxed index lists, the former path representation, as the baseline.
+ */
+@State(Scope.Benchmark)
+public class AbsoluteTreePathBenchmark {
+
+	/**
+	 * The number of keys in the lookup map.
+	 */
+	private static final int KEYS = 4096;
+
+	@Param({ "4", "32", "256" })
+	public int depth;
+
+	private AbsoluteTreePath[] paths;
+
+	private List<Integer>[] lists;
+
+	private Map<AbsoluteTreePath, Integer> pathMap;
+
+	private Map<List<Integer>, Integer> listMap;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		paths = new AbsoluteTreePath[KEYS];
+		lists = new List[KEYS];
+		pathMap = new HashMap<>();
+		listMap = new HashMap<>();
+
+		for (int k = 0; k < KEYS; k++) {
+			int[] idx = new int[depth];
+			idx[depth - 1] = k;
+			paths[k] = AbsoluteTreePath.of(idx);
+			lists[k] = List.of(Arrays.stream(idx).boxed().toArray(Integer[]::new));
+			pathMap.put(AbsoluteTreePath.of(idx), k);
+			listMap.put(List.copyOf(lists[k]), k);
+		}
+	}
+
+	@Benchmark
+	public AbsoluteTreePath childChain() {
+		AbsoluteTreePath path = AbsoluteTreePath.of();
+		for (int i = 0; i < depth; i++) {
+			path = path.child(i).right().left();
+		}
+		return path;
+	}
+
+	@Benchmark
+	public List<Integer> listChildChain() {
+		List<Integer> path = List.of();
+		for (int i = 0; i < depth; i++) {
+			List<Integer> child = new ArrayList<>(path.size() + 1);
+			child.addAll(path);
+			child.add(i);
+			path = List.copyOf(child);
+		}
+		return path;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void lookup(Blackhole bh) {
+		for (AbsoluteTreePath path : paths) {
+			bh.consume(pathMap.get(path));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(KEYS)
+	public void listLookup(Blackhole bh) {
+		for (List<Integer> list : lists) {
+			bh.consume(listMap.get(list));
+		}
+	}
+
+	@Benchmark
+	public AbsoluteTreePath[] sort() {
+		AbsoluteTreePath[] sorted = paths.clone();
+		Arrays.sort(sorted, (p1, p2) -> p2.compareTo(p1));
+		return sorted;
+	}
+
+}
@@ -0,0 +1,81 @@
+package maciek.tree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Simple immutable semantics used by the benchmarks.
+ */
+public class BenchmarkSemantics implements TreeNodeSemantics<BenchmarkSemantics> {
+
+	/**
+	 * The codec writing the value as int.
+	 */
+	public static final SemanticsCodec<BenchmarkSemantics> CODEC = new SemanticsCodec<>() {
+
+		@Override
+		public void write(BenchmarkSemantics semantics, DataOutput out) throws IOException {
+			out.writeInt(semantics.value);
+		}
+
+		@Override
+		public BenchmarkSemantics read(DataInput in) throws IOException {
+			return new BenchmarkSemantics(in.readInt());
+		}
+
+	};
+
+	/**
+	 * The semantic value.
+	 */
+	private final int value;
+
+	/**
+	 * Whether the semantics is shared instead of copied.
+	 */
+	private final boolean shareable;
+
+	/**
+	 * Public constructor of the shareable semantics.
+	 */
+	public BenchmarkSemantics(int value) {
+		this(value, true);
+	}
+
+	/**
+	 * Public constructor.
+	 */
+	public BenchmarkSemantics(int value, boolean shareable) {
+		this.value = value;
+		this.shareable = shareable;
+	}
+
+	/**
+	 * The semantic value.
+	 */
+	public int value() {
+		return value;
+	}
+
+	@Override
+	public BenchmarkSemantics copy(TreeNode<?, BenchmarkSemantics> newNode) {
+		return shareable ? this : new BenchmarkSemantics(value, false);
+	}
+
+	@Override
+	public boolean isShareable() {
+		return shareable;
+	}
+
+	@Override
+	public int hashCode() {
+		return value;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof BenchmarkSemantics && ((BenchmarkSemantics) obj).value == value;
+	}
+
+}
@@ -0,0 +1,52 @@
+package maciek.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link ColumnarTree} compared to the object per node trees.
+ */
+public class ColumnarTreeBenchmark {
+
+	@Benchmark
+	public Object map(TreeState state) {
+		return state.immutable.map(ColumnarTree.mapper());
+	}
+
+	@Benchmark
+	public Object mapOffHeap(TreeState state) {
+		return state.immutable.map(ColumnarTree.mapper(true));
+	}
+
+	@Benchmark
+	public void preOrder(TreeState state, Blackhole bh) {
+		for (ColumnarTreeNode<BenchmarkSemantics> n : state.columnar.preOrder()) {
+			bh.consume(n.semantics());
+		}
+	}
+
+	@Benchmark
+	public void postOrder(TreeState state, Blackhole bh) {
+		for (ColumnarTreeNode<BenchmarkSemantics> n : state.columnar.postOrder()) {
+			bh.consume(n.semantics());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void node(TreeState state, Blackhole bh) {
+		for (AbsoluteTreePath path : state.paths) {
+			bh.consume(state.columnar.node(path));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void absoluteTreePath(TreeState state, Blackhole bh) {
+		for (AbsoluteTreePath path : state.paths) {
+			bh.consume(state.columnar.node(path).absoluteTreePath());
+		}
+	}
+
+}
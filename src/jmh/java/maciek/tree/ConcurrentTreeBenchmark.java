@@ -0,0 +1,131 @@
+package maciek.tree;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the {@link ConcurrentTree} read by many threads while modified by one, against the mutable tree
+ * guarded by the read-write lock.
+ */
+public class ConcurrentTreeBenchmark {
+
+	static final int READERS = 7;
+
+	/**
+	 * The mutable tree guarded by the read-write lock.
+	 */
+	static final class LockedTree<S extends TreeNodeSemantics<S>> {
+
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		private final MutableTree<S> tree;
+
+		LockedTree(Tree<?, ?, S> tree) {
+			this.tree = tree.mutable();
+		}
+
+		S semantics(AbsoluteTreePath path) {
+			lock.readLock().lock();
+			try {
+				MutableTreeNode<S> n = tree.node(path);
+				return n == null ? null : n.semantics();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		void apply(TreeModification<S> modification) {
+			lock.writeLock().lock();
+			try {
+				modification.transform(tree);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+	}
+
+	/**
+	 * The trees shared by the readers and the writer of the group, the writer adding and removing a leaf in turns.
+	 */
+	@State(Scope.Group)
+	public static class Trees {
+
+		public ConcurrentTree<BenchmarkSemantics> concurrent;
+
+		public LockedTree<BenchmarkSemantics> locked;
+
+		public TreeModification<BenchmarkSemantics> add;
+
+		public TreeModification<BenchmarkSemantics> remove;
+
+		public boolean added;
+
+		@Setup
+		public void setUp(TreeState state) {
+			concurrent = new ConcurrentTree<>(state.immutable);
+			locked = new LockedTree<>(state.immutable);
+			AbsoluteTreePath path = state.paths[0];
+			TreeNodeFactory.Mutable<BenchmarkSemantics> factory = MutableTree.nodeFactory();
+			add = tree -> tree.node(path).addChild(factory.createNode(new BenchmarkSemantics(-1)), 0);
+			remove = tree -> tree.node(path).removeChild(0);
+		}
+
+		TreeModification<BenchmarkSemantics> next() {
+			added = !added;
+			return added ? add : remove;
+		}
+
+	}
+
+	/**
+	 * The sampled path each reader thread looks up next.
+	 */
+	@State(Scope.Thread)
+	public static class Reader {
+
+		public int sample;
+
+		AbsoluteTreePath next(TreeState state) {
+			return state.paths[sample++ % TreeState.SAMPLES];
+		}
+
+	}
+
+	@Benchmark
+	@Group("concurrent")
+	@GroupThreads(READERS)
+	public Object concurrentRead(TreeState state, Trees trees, Reader reader) {
+		ImmutableTreeNode<BenchmarkSemantics> n = trees.concurrent.get().root().path(reader.next(state));
+		return n == null ? null : n.semantics();
+	}
+
+	@Benchmark
+	@Group("concurrent")
+	@GroupThreads(1)
+	public Object concurrentWrite(Trees trees) {
+		return trees.concurrent.apply(trees.next());
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(READERS)
+	public Object lockedRead(TreeState state, Trees trees, Reader reader) {
+		return trees.locked.semantics(reader.next(state));
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public void lockedWrite(Trees trees) {
+		trees.locked.apply(trees.next());
+	}
+
+}
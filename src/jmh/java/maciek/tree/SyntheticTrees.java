@@ -0,0 +1,86 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic benchmark trees.
+ */
+public final class SyntheticTrees {
+
+	/**
+	 * The seed making the generated trees repeatable.
+	 */
+	private static final long SEED = 42;
+
+	/**
+	 * Utility class.
+	 */
+	private SyntheticTrees() {
+	}
+
+	/**
+	 * Generates the immutable tree of given shape and size.
+	 */
+	public static ImmutableTree<BenchmarkSemantics> immutable(TreeShape shape, int size) {
+		return new ImmutableTree<>(root(shape, size, ImmutableTree.nodeFactory()), TreeSnapshots.empty());
+	}
+
+	/**
+	 * Generates the mutable tree of given shape and size.
+	 */
+	public static MutableTree<BenchmarkSemantics> mutable(TreeShape shape, int size) {
+		return new MutableTree<>(root(shape, size, MutableTree.nodeFactory()), TreeSnapshots.empty());
+	}
+
+	/**
+	 * Generates the nodes of given shape and size with the factory.
+	 * <p>
+	 * The node semantics value is its creation index.
+	 * 
+	 * @return the root node
+	 */
+	public static <N extends TreeNode<N, BenchmarkSemantics>> N root(TreeShape shape, int size,
+			TreeNodeFactory<N, BenchmarkSemantics> nodeFactory) {
+
+		int[] parents = shape.parents(size, new Random(SEED));
+
+		List<N> nodes = new ArrayList<>(size);
+		List<List<N>> children = new ArrayList<>(size);
+
+		for (int i = 0; i < size; i++) {
+			N parent = parents[i] < 0 ? null : nodes.get(parents[i]);
+			List<N> ch = new ArrayList<>();
+			N node = nodeFactory.createNode(parent, ch, new BenchmarkSemantics(i));
+			if (parent != null) {
+				children.get(parents[i]).add(node);
+			}
+			nodes.add(node);
+			children.add(ch);
+		}
+
+		// the children are created after their parents
+		for (int i = size - 1; i >= 0; i--) {
+			nodeFactory.nodeCompleted(nodes.get(i));
+		}
+
+		return nodes.get(0);
+	}
+
+	/**
+	 * Samples the paths of random tree nodes.
+	 */
+	public static AbsoluteTreePath[] samplePaths(Tree<?, ?, ?> tree, int count) {
+
+		List<? extends TreeNode<?, ?>> nodes = tree.nodes();
+		Random random = new Random(SEED);
+
+		AbsoluteTreePath[] paths = new AbsoluteTreePath[count];
+		for (int i = 0; i < count; i++) {
+			paths[i] = nodes.get(random.nextInt(nodes.size())).absoluteTreePath();
+		}
+		return paths;
+	}
+
+}
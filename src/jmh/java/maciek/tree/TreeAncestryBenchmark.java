@@ -0,0 +1,103 @@
+package maciek.tree;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link ImmutableTree} ancestry index against the computation from the absolute tree paths.
+ */
+public class TreeAncestryBenchmark {
+
+	/**
+	 * The immutable tree with the ancestry index built.
+	 */
+	@State(Scope.Benchmark)
+	public static class Indexed {
+
+		@Setup
+		public void setUp(TreeState state) {
+			state.immutable.lca(state.immutable.root(), state.immutable.root());
+		}
+
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void lca(TreeState state, Indexed indexed, Blackhole bh) {
+		ImmutableTreeNode<BenchmarkSemantics>[] nodes = state.immutableNodes;
+		for (int i = 0; i < nodes.length; i++) {
+			bh.consume(state.immutable.lca(nodes[i], nodes[(i + 1) % nodes.length]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void lcaByPaths(TreeState state, Blackhole bh) {
+		ImmutableTreeNode<BenchmarkSemantics>[] nodes = state.immutableNodes;
+		for (int i = 0; i < nodes.length; i++) {
+			int[] a = nodes[i].absoluteTreePath().toArray();
+			int[] b = nodes[(i + 1) % nodes.length].absoluteTreePath().toArray();
+			bh.consume(AbsoluteTreePath.of(Arrays.copyOf(a, commonPrefix(a, b))).get(state.immutable));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void distance(TreeState state, Indexed indexed, Blackhole bh) {
+		ImmutableTreeNode<BenchmarkSemantics>[] nodes = state.immutableNodes;
+		for (int i = 0; i < nodes.length; i++) {
+			bh.consume(state.immutable.distance(nodes[i], nodes[(i + 1) % nodes.length]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void distanceByPaths(TreeState state, Blackhole bh) {
+		ImmutableTreeNode<BenchmarkSemantics>[] nodes = state.immutableNodes;
+		for (int i = 0; i < nodes.length; i++) {
+			int[] a = nodes[i].absoluteTreePath().toArray();
+			int[] b = nodes[(i + 1) % nodes.length].absoluteTreePath().toArray();
+			bh.consume(a.length + b.length - 2 * commonPrefix(a, b));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void kthAncestor(TreeState state, Indexed indexed, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutableNodes) {
+			bh.consume(state.immutable.kthAncestor(n, n.depth() / 2));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void kthAncestorByParents(TreeState state, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutableNodes) {
+			ImmutableTreeNode<BenchmarkSemantics> a = n;
+			for (int k = n.depth() / 2; k > 0; k--) {
+				a = a.parent();
+			}
+			bh.consume(a);
+		}
+	}
+
+	@Benchmark
+	public Object buildIndex(TreeState state) {
+		return new TreeAncestry<>(state.immutable.root());
+	}
+
+	private static int commonPrefix(int[] a, int[] b) {
+		int i = 0;
+		while (i < a.length && i < b.length && a[i] == b[i]) {
+			i++;
+		}
+		return i;
+	}
+
+}
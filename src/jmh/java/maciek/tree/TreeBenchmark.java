@@ -0,0 +1,114 @@
+package maciek.tree;
+
+import java.util.Iterator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link Tree} operations.
+ */
+public class TreeBenchmark {
+
+	/**
+	 * The number of nodes visited by the early exit iteration.
+	 */
+	private static final int EARLY_EXIT = 16;
+
+	@Benchmark
+	public Object nodes(TreeState state) {
+		return state.immutable.nodes();
+	}
+
+	@Benchmark
+	public void iterateEarlyExit(TreeState state, Blackhole bh) {
+		Iterator<ImmutableTreeNode<BenchmarkSemantics>> it = state.immutable.iterator();
+		for (int i = 0; i < EARLY_EXIT && it.hasNext(); i++) {
+			bh.consume(it.next());
+		}
+	}
+
+	@Benchmark
+	public void preOrder(TreeState state, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutable.preOrder()) {
+			bh.consume(n);
+		}
+	}
+
+	@Benchmark
+	public void postOrder(TreeState state, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutable.postOrder()) {
+			bh.consume(n);
+		}
+	}
+
+	@Benchmark
+	public void levelOrder(TreeState state, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutable.levelOrder()) {
+			bh.consume(n);
+		}
+	}
+
+	@Benchmark
+	public long streamFilter(TreeState state) {
+		return state.immutable.stream().filter(n -> n.childCount() == 0).count();
+	}
+
+	@Benchmark
+	public long parallelStreamFilter(TreeState state) {
+		return state.immutable.stream().parallel().filter(n -> n.childCount() == 0).count();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void immutableNode(TreeState state, Blackhole bh) {
+		for (AbsoluteTreePath path : state.paths) {
+			bh.consume(state.immutable.node(path));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void mutableNode(TreeState state, Blackhole bh) {
+		for (AbsoluteTreePath path : state.paths) {
+			bh.consume(state.mutable.node(path));
+		}
+	}
+
+	@Benchmark
+	public Object asMap(TreeState state) {
+		return state.mutable.asMap();
+	}
+
+	@Benchmark
+	public Object immutable(TreeState state) {
+		return state.mutable.immutable();
+	}
+
+	@Benchmark
+	public Object internedImmutable(TreeState state) {
+		return state.mutable.map(ImmutableTree.mapper(new TreeNodeFactory.Interning<BenchmarkSemantics>()));
+	}
+
+	@Benchmark
+	public Object mutable(TreeState state) {
+		return state.immutable.mutable();
+	}
+
+	@Benchmark
+	public Object copy(TreeState state) {
+		return state.mutable.copy();
+	}
+
+	@Benchmark
+	public Object recentlyAdded(TreeState state) {
+		return state.immutable.recentlyAdded(1);
+	}
+
+	@Benchmark
+	public boolean equalTrees(TreeState state) {
+		return state.immutable.equals(state.mutable.immutable());
+	}
+
+}
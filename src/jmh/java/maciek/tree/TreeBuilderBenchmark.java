@@ -0,0 +1,130 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the {@link TreeBuilder} operations.
+ */
+public class TreeBuilderBenchmark {
+
+	/**
+	 * The tree nodes as flat data: the insertions of each level, each node at its path.
+	 */
+	@State(Scope.Benchmark)
+	public static class Levels {
+
+		public List<List<TreeBuilder.Insertion<BenchmarkSemantics>>> levels;
+
+		@Setup
+		public void setUp(TreeState state) {
+			levels = new ArrayList<>();
+			for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutable.nodes()) {
+				int depth = n.depth();
+				if (depth == 0) {
+					continue;
+				}
+				while (levels.size() < depth) {
+					levels.add(new ArrayList<>());
+				}
+				AbsoluteTreePath path = n.absoluteTreePath();
+				levels.get(depth - 1).add(TreeBuilder.Insertion.of(tree -> path, n.semantics()));
+			}
+		}
+
+	}
+
+	/**
+	 * The builder of the built tree, edited at the sampled paths between the builds.
+	 */
+	@State(Scope.Thread)
+	public static class Edited {
+
+		public TreeBuilder<BenchmarkSemantics> builder;
+
+		public int sample;
+
+		@Setup(Level.Iteration)
+		public void setUp(TreeState state) {
+			builder = state.immutable.toBuilder();
+			builder.build();
+		}
+
+		/**
+		 * Adds a leaf as the first child of the next sampled node.
+		 */
+		public TreeBuilder<BenchmarkSemantics> edit(TreeState state) {
+			AbsoluteTreePath path = state.paths[sample++ % TreeState.SAMPLES].child(0);
+			return builder.addNode(tree -> path, new BenchmarkSemantics(sample));
+		}
+
+	}
+
+	@Benchmark
+	public Object buildWide(TreeState state) {
+		TreeBuilder<BenchmarkSemantics> builder = new TreeBuilder<BenchmarkSemantics>().root(new BenchmarkSemantics(0));
+		for (int i = 1; i < state.size; i++) {
+			builder.addChild(new BenchmarkSemantics(i));
+		}
+		return builder.build();
+	}
+
+	@Benchmark
+	public Object buildChain(TreeState state) {
+		TreeBuilder<BenchmarkSemantics> builder = new TreeBuilder<BenchmarkSemantics>().root(new BenchmarkSemantics(0));
+		for (int i = 1; i < state.size; i++) {
+			builder.addChild(new BenchmarkSemantics(i)).moveCursor(c -> c.lastChild());
+		}
+		return builder.build();
+	}
+
+	@Benchmark
+	public Object rebuild(TreeState state) {
+		return state.immutable.toBuilder().build();
+	}
+
+	@Benchmark
+	public Object editAndBuild(TreeState state, Edited edited) {
+		return edited.edit(state).build();
+	}
+
+	@Benchmark
+	public Object editAndBuildFully(TreeState state, Edited edited) {
+		return edited.edit(state).build(ImmutableTree.mapper());
+	}
+
+	@Benchmark
+	public Object buildMutable(TreeState state) {
+		return state.immutable.toBuilder().buildMutable();
+	}
+
+	@Benchmark
+	public Object buildByCursor(TreeState state) {
+		TreeBuilder<BenchmarkSemantics> builder = new TreeBuilder<BenchmarkSemantics>()
+				.root(state.immutable.root().semantics());
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutable.nodes()) {
+			if (n.depth() > 0) {
+				AbsoluteTreePath parent = n.absoluteTreePath().parent();
+				builder.moveCursor(c -> c.path(parent)).addChild(n.semantics());
+			}
+		}
+		return builder.build();
+	}
+
+	@Benchmark
+	public Object buildByLevels(TreeState state, Levels levels) {
+		TreeBuilder<BenchmarkSemantics> builder = new TreeBuilder<BenchmarkSemantics>()
+				.root(state.immutable.root().semantics());
+		for (List<TreeBuilder.Insertion<BenchmarkSemantics>> level : levels.levels) {
+			builder.addNodes(level);
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,60 @@
+package maciek.tree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Throughput benchmarks of the {@link TreeCodec} formats.
+ */
+public class TreeCodecBenchmark {
+
+	/**
+	 * The tree encoded with the format.
+	 */
+	@State(Scope.Benchmark)
+	public static class Encoded {
+
+		@Param({ "binary", "json" })
+		public String format;
+
+		public TreeCodec codec;
+
+		public byte[] bytes;
+
+		@Setup(Level.Trial)
+		public void setUp(TreeState state) throws IOException {
+			codec = TreeCodec.forName(format);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			codec.encode(state.immutable, BenchmarkSemantics.CODEC, out);
+			bytes = out.toByteArray();
+		}
+
+	}
+
+	@Benchmark
+	public void encode(TreeState state, Encoded encoded) throws IOException {
+		encoded.codec.encode(state.immutable, BenchmarkSemantics.CODEC, OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public Object decodeImmutable(Encoded encoded) throws IOException {
+		return encoded.codec.decode(new ByteArrayInputStream(encoded.bytes), BenchmarkSemantics.CODEC,
+				ImmutableTree.mapper());
+	}
+
+	@Benchmark
+	public Object decodeColumnar(Encoded encoded) throws IOException {
+		return encoded.codec.decode(new ByteArrayInputStream(encoded.bytes), BenchmarkSemantics.CODEC,
+				ColumnarTree.mapper());
+	}
+
+}
@@ -0,0 +1,48 @@
+package maciek.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link TreeCursor} operations.
+ */
+public class TreeCursorBenchmark {
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void pathAndCurrentNode(TreeState state, Blackhole bh) {
+		TreeCursor<ImmutableTreeNode<BenchmarkSemantics>, BenchmarkSemantics> cursor = new TreeCursor<>(state.immutable);
+		for (AbsoluteTreePath path : state.paths) {
+			cursor.path(path).forCurrentNode(bh::consume);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void parentAndChild(TreeState state, Blackhole bh) {
+		TreeCursor<ImmutableTreeNode<BenchmarkSemantics>, BenchmarkSemantics> cursor = new TreeCursor<>(state.immutable);
+		for (AbsoluteTreePath path : state.paths) {
+			cursor.path(path).parent().child(0).forCurrentNode(bh::consume);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void siblings(TreeState state, Blackhole bh) {
+		TreeCursor<ImmutableTreeNode<BenchmarkSemantics>, BenchmarkSemantics> cursor = new TreeCursor<>(state.immutable);
+		for (AbsoluteTreePath path : state.paths) {
+			cursor.path(path).right().left().forCurrentNode(bh::consume);
+		}
+	}
+
+	@Benchmark
+	public void lastChildDescent(TreeState state, Blackhole bh) {
+		TreeCursor<MutableTreeNode<BenchmarkSemantics>, BenchmarkSemantics> cursor = new TreeCursor<>(state.mutable);
+		for (int i = 0; i < TreeState.SAMPLES; i++) {
+			cursor.lastChild();
+		}
+		cursor.forCurrentNode(bh::consume);
+	}
+
+}
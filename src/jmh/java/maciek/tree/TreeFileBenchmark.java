@@ -0,0 +1,75 @@
+package maciek.tree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link TreeFile} writing and opening.
+ */
+public class TreeFileBenchmark {
+
+	/**
+	 * The tree written to a temporary file.
+	 */
+	@State(Scope.Benchmark)
+	public static class File {
+
+		public Path path;
+
+		/**
+		 * The file written by the benchmark, so the mapped one stays intact.
+		 */
+		public Path written;
+
+		public ColumnarTree<BenchmarkSemantics> opened;
+
+		@Setup(Level.Trial)
+		public void setUp(TreeState state) throws IOException {
+			path = Files.createTempFile("tree", ".bin");
+			written = Files.createTempFile("tree", ".bin");
+			TreeFile.write(state.immutable, BenchmarkSemantics.CODEC, path);
+			opened = TreeFile.open(path, BenchmarkSemantics.CODEC);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			Files.deleteIfExists(path);
+			Files.deleteIfExists(written);
+		}
+
+	}
+
+	@Benchmark
+	public void write(TreeState state, File file) throws IOException {
+		TreeFile.write(state.immutable, BenchmarkSemantics.CODEC, file.written);
+	}
+
+	@Benchmark
+	public Object open(File file) throws IOException {
+		return TreeFile.open(file.path, BenchmarkSemantics.CODEC);
+	}
+
+	@Benchmark
+	public Object openAndQueryRoot(File file) throws IOException {
+		return TreeFile.open(file.path, BenchmarkSemantics.CODEC).root().lastChild().semantics();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void node(TreeState state, File file, Blackhole bh) {
+		for (AbsoluteTreePath path : state.paths) {
+			bh.consume(file.opened.node(path).semantics());
+		}
+	}
+
+}
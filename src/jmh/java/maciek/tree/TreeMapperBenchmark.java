@@ -0,0 +1,63 @@
+package maciek.tree;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of the tree mapping on the pools of different sizes against the sequential mapping.
+ */
+public class TreeMapperBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Pool {
+
+		@Param({ "1", "2", "4", "8" })
+		public int parallelism;
+
+		public ForkJoinPool pool;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			pool = new ForkJoinPool(parallelism);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			pool.shutdown();
+		}
+
+	}
+
+	@Benchmark
+	public Object immutableSequential(TreeState state) {
+		return state.mutable.immutable();
+	}
+
+	@Benchmark
+	public Object immutableParallel(TreeState state, Pool pool) {
+		return ImmutableTree.<BenchmarkSemantics>mapper().map(state.mutable, pool.pool);
+	}
+
+	@Benchmark
+	public Object mutableSequential(TreeState state) {
+		return state.immutable.mutable();
+	}
+
+	@Benchmark
+	public Object mutableParallel(TreeState state, Pool pool) {
+		return MutableTree.<BenchmarkSemantics>mapper().map(state.immutable, pool.pool);
+	}
+
+	@Benchmark
+	public Object internedParallel(TreeState state, Pool pool) {
+		return ImmutableTree.mapper(new TreeNodeFactory.Interning<BenchmarkSemantics>()).map(state.mutable, pool.pool);
+	}
+
+}
@@ -0,0 +1,95 @@
+package maciek.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link TreeNode} operations.
+ */
+public class TreeNodeBenchmark {
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void children(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.children());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void childrenView(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.childrenView());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void child(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.parent() == null ? n : n.parent().child(n.childIndex()));
+		}
+	}
+
+	@Benchmark
+	public Object descendants(TreeState state) {
+		return state.mutable.root().descendants();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void mutableAbsoluteTreePath(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.absoluteTreePath());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void immutableAbsoluteTreePath(TreeState state, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutableNodes) {
+			bh.consume(n.absoluteTreePath());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void childIndex(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.childIndex());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void siblings(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.left());
+			bh.consume(n.right());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void root(TreeState state, Blackhole bh) {
+		for (MutableTreeNode<BenchmarkSemantics> n : state.mutableNodes) {
+			bh.consume(n.root());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeState.SAMPLES)
+	public void semantics(TreeState state, Blackhole bh) {
+		for (ImmutableTreeNode<BenchmarkSemantics> n : state.immutableNodes) {
+			bh.consume(n.semantics());
+		}
+	}
+
+	@Benchmark
+	public Object subtree(TreeState state) {
+		return state.immutableNodes[0].subtree();
+	}
+
+}
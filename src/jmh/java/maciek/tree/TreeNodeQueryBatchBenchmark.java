@@ -0,0 +1,72 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@link TreeNodeQueryBatch} against evaluating the queries one by one.
+ */
+public class TreeNodeQueryBatchBenchmark {
+
+	/**
+	 * The number of queries.
+	 */
+	static final int QUERIES = 200;
+
+	/**
+	 * The number of distinct predicates the queries are combined of.
+	 */
+	static final int PREDICATES = 20;
+
+	@State(Scope.Benchmark)
+	public static class Queries {
+
+		public List<TreeNodeQuery<BenchmarkSemantics>> queries;
+
+		public TreeNodeQueryBatch<BenchmarkSemantics> batch;
+
+		@Setup
+		public void setUp() {
+			List<Predicate<TreeNode<?, BenchmarkSemantics>>> predicates = new ArrayList<>();
+			for (int i = 0; i < PREDICATES; i++) {
+				int divisor = 2 + i;
+				predicates.add(n -> n.semantics().value() % divisor == 0);
+			}
+			Comparator<TreeNode<?, BenchmarkSemantics>> deepest = Comparator.comparingInt(n -> -n.depth());
+
+			queries = new ArrayList<>();
+			for (int i = 0; i < QUERIES; i++) {
+				queries.add(new TreeNodeQuery<>(predicates.get(i % PREDICATES), deepest)
+						.and(predicates.get(i * 7 % PREDICATES)));
+			}
+			batch = new TreeNodeQueryBatch<>(queries);
+		}
+
+	}
+
+	@Benchmark
+	public void oneByOne(TreeState state, Queries queries, Blackhole bh) {
+		for (TreeNodeQuery<BenchmarkSemantics> q : queries.queries) {
+			bh.consume(q.queryNode(state.immutable));
+		}
+	}
+
+	@Benchmark
+	public Object batch(TreeState state, Queries queries) {
+		return queries.batch.queryNodes(state.immutable);
+	}
+
+	@Benchmark
+	public Object batchParallel(TreeState state, Queries queries) {
+		return queries.batch.queryNodes(state.immutable, true);
+	}
+
+}
@@ -0,0 +1,67 @@
+package maciek.tree;
+
+import java.util.Comparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the {@link TreeNodeQuery} with and without the secondary index.
+ */
+public class TreeNodeQueryBenchmark {
+
+	/**
+	 * The key of the nodes, about 1000 nodes per key in the largest trees.
+	 */
+	static final TreeNodeIndex.Key<BenchmarkSemantics, Integer> KEY = TreeNodeIndex.sorted(s -> s.value() % 10000);
+
+	/**
+	 * The queries, the deepest node first.
+	 */
+	@State(Scope.Benchmark)
+	public static class Queries {
+
+		public ImmutableTree<BenchmarkSemantics> indexed;
+
+		public TreeNodeQuery<BenchmarkSemantics> byKey;
+
+		public TreeNodeQuery<BenchmarkSemantics> byKeyRange;
+
+		@Setup
+		public void setUp(TreeState state) {
+			indexed = ImmutableTree.<BenchmarkSemantics>mapper(KEY).map(state.immutable);
+			Comparator<TreeNode<?, BenchmarkSemantics>> deepest = Comparator.comparingInt(n -> -n.depth());
+			byKey = TreeNodeQuery.byKey(KEY, 42, deepest);
+			byKeyRange = TreeNodeQuery.byKeyRange(KEY, 42, 52, deepest);
+		}
+
+	}
+
+	@Benchmark
+	public Object byKeyScan(TreeState state, Queries queries) {
+		return queries.byKey.queryNode(state.immutable);
+	}
+
+	@Benchmark
+	public Object byKeyIndexed(Queries queries) {
+		return queries.byKey.queryNode(queries.indexed);
+	}
+
+	@Benchmark
+	public Object byKeyRangeScan(TreeState state, Queries queries) {
+		return queries.byKeyRange.queryNode(state.immutable);
+	}
+
+	@Benchmark
+	public Object byKeyRangeIndexed(Queries queries) {
+		return queries.byKeyRange.queryNode(queries.indexed);
+	}
+
+	@Benchmark
+	public Object buildIndex(TreeState state) {
+		return new TreeNodeIndex<>(KEY, state.immutable);
+	}
+
+}
@@ -0,0 +1,57 @@
+package maciek.tree;
+
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks of the {@link TreeSelector} against the equivalent scans of the tree nodes.
+ */
+public class TreeSelectorBenchmark {
+
+	static final Map<String, Predicate<BenchmarkSemantics>> NAMES = Map.of("even", s -> s.value() % 2 == 0);
+
+	/**
+	 * The first children of the nodes with even value, matched anywhere.
+	 */
+	static final TreeSelector<BenchmarkSemantics> FIRST_CHILDREN_OF_EVEN = TreeSelector.compile("//even/*[1]",
+			NAMES::get);
+
+	/**
+	 * The even nodes below the second child of the root, matched in its subtree only.
+	 */
+	static final TreeSelector<BenchmarkSemantics> EVEN_BELOW_SECOND = TreeSelector.compile("/*/*[2]//even", NAMES::get);
+
+	@Benchmark
+	public Object firstChildrenOfEven(TreeState state) {
+		return FIRST_CHILDREN_OF_EVEN.select(state.immutable);
+	}
+
+	@Benchmark
+	public Object firstChildrenOfEvenScan(TreeState state) {
+		return state.immutable.nodes()
+				.stream()
+				.filter(n -> n.parent() != null && n.childIndex() == 0 && n.parent().semantics().value() % 2 == 0)
+				.collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public Object evenBelowSecond(TreeState state) {
+		return EVEN_BELOW_SECOND.select(state.immutable);
+	}
+
+	@Benchmark
+	public Object evenBelowSecondScan(TreeState state) {
+		return state.immutable.nodes()
+				.stream()
+				.filter(n -> n.semantics().value() % 2 == 0 && n.depth() >= 2)
+				.filter(n -> {
+					int[] path = n.absoluteTreePath().toArray();
+					return path[0] == 1;
+				})
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,55 @@
+package maciek.tree;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the tree operations with the shared semantics against the copied ones.
+ */
+public class TreeSemanticsBenchmark {
+
+	/**
+	 * The mutable tree with the same structure and the semantics copied on get and set.
+	 */
+	@State(Scope.Benchmark)
+	public static class Copied {
+
+		public MutableTree<BenchmarkSemantics> mutable;
+
+		@Setup
+		public void setUp(TreeState state) {
+			TreeNodeFactory.Mutable<BenchmarkSemantics> mutableFactory = MutableTree.nodeFactory();
+			TreeNodeFactory<MutableTreeNode<BenchmarkSemantics>, BenchmarkSemantics> copyingFactory = (parent, children,
+					semantics) -> mutableFactory.createNode(parent, children, new BenchmarkSemantics(semantics.value(), false));
+			TreeMapper<MutableTree<BenchmarkSemantics>, MutableTreeNode<BenchmarkSemantics>, BenchmarkSemantics> mapper = new TreeMapper<>(
+					MutableTree::new, copyingFactory);
+			mutable = state.mutable.map(mapper);
+		}
+
+	}
+
+	@Benchmark
+	public Object immutableShared(TreeState state) {
+		return state.mutable.immutable();
+	}
+
+	@Benchmark
+	public Object immutableCopied(Copied copied) {
+		return copied.mutable.immutable();
+	}
+
+	@Benchmark
+	public Object asMapShared(TreeState state) {
+		return state.mutable.asMap();
+	}
+
+	@Benchmark
+	public Object asMapCopied(Copied copied) {
+		return copied.mutable.asMap();
+	}
+
+}
@@ -0,0 +1,78 @@
+package maciek.tree;
+
+import java.util.Random;
+
+/**
+ * The shapes of synthetic benchmark trees.
+ * <p>
+ * Each shape defines the parent index of every node, the parents being created before their children.
+ */
+public enum TreeShape {
+
+	/**
+	 * Every node has a single child.
+	 */
+	DEEP_CHAIN {
+		@Override
+		int[] parents(int size, Random random) {
+			int[] parents = new int[size];
+			for (int i = 0; i < size; i++) {
+				parents[i] = i - 1;
+			}
+			return parents;
+		}
+	},
+
+	/**
+	 * All the nodes are the root children.
+	 */
+	WIDE {
+		@Override
+		int[] parents(int size, Random random) {
+			int[] parents = new int[size];
+			parents[0] = -1;
+			return parents;
+		}
+	},
+
+	/**
+	 * A complete tree with the fan-out of {@value #BALANCED_FAN_OUT}.
+	 */
+	BALANCED {
+		@Override
+		int[] parents(int size, Random random) {
+			int[] parents = new int[size];
+			for (int i = 0; i < size; i++) {
+				parents[i] = (i - 1) / BALANCED_FAN_OUT;
+			}
+			parents[0] = -1;
+			return parents;
+		}
+	},
+
+	/**
+	 * A random recursive tree, each node parent is chosen uniformly among the previously created nodes.
+	 */
+	RANDOM {
+		@Override
+		int[] parents(int size, Random random) {
+			int[] parents = new int[size];
+			parents[0] = -1;
+			for (int i = 1; i < size; i++) {
+				parents[i] = random.nextInt(i);
+			}
+			return parents;
+		}
+	};
+
+	/**
+	 * The fan-out of the balanced tree.
+	 */
+	static final int BALANCED_FAN_OUT = 4;
+
+	/**
+	 * The parent index of every node, -1 for the root.
+	 */
+	abstract int[] parents(int size, Random random);
+
+}
@@ -0,0 +1,81 @@
+package maciek.tree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the {@link TreeSnapshots} operations.
+ */
+public class TreeSnapshotsBenchmark {
+
+	/**
+	 * The number of versions in the history.
+	 */
+	private static final int VERSIONS = 64;
+
+	/**
+	 * The history of single semantics edits.
+	 */
+	@State(Scope.Benchmark)
+	public static class History {
+
+		public TreeSnapshots<BenchmarkSemantics> snapshots;
+
+		@Setup(Level.Trial)
+		public void setUp(TreeState state) {
+			ImmutableTree<BenchmarkSemantics> tree = state.immutable;
+			for (int i = 0; i < VERSIONS; i++) {
+				tree = tree.withSemantics(state.paths[i], new BenchmarkSemantics(-i));
+			}
+			snapshots = tree.treeSnapshots();
+		}
+
+	}
+
+	@Benchmark
+	public Object copyAndTakeSnapshotOfMutable(TreeState state) {
+		return state.mutable.treeSnapshots().copyAndTakeSanpshot(state.mutable);
+	}
+
+	@Benchmark
+	public Object copyAndTakeSnapshotOfImmutable(TreeState state) {
+		return state.mutable.treeSnapshots().copyAndTakeSanpshot(state.immutable);
+	}
+
+	@Benchmark
+	public Object getOldest(History history) {
+		return history.snapshots.get(history.snapshots.size() - 1);
+	}
+
+	@Benchmark
+	public Object keepLastHistory(TreeState state) {
+		return history(state, SnapshotRetentionPolicy.keepLast(8));
+	}
+
+	@Benchmark
+	public Object exponentialHistory(TreeState state) {
+		return history(state, SnapshotRetentionPolicy.exponential());
+	}
+
+	@Benchmark
+	public Object all(History history) {
+		return history.snapshots.all();
+	}
+
+	/**
+	 * Takes the snapshots of single semantics edits, retained by the policy.
+	 */
+	private static TreeSnapshots<BenchmarkSemantics> history(TreeState state, SnapshotRetentionPolicy retention) {
+		TreeSnapshots<BenchmarkSemantics> snapshots = TreeSnapshots.<BenchmarkSemantics>empty().withRetention(retention);
+		ImmutableTree<BenchmarkSemantics> tree = state.immutable;
+		for (int i = 0; i < VERSIONS; i++) {
+			tree = tree.withSemantics(state.paths[i], new BenchmarkSemantics(-i));
+			snapshots = snapshots.copyAndTakeSanpshot(tree);
+		}
+		return snapshots;
+	}
+
+}
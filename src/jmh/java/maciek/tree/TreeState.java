@@ -0,0 +1,72 @@
+package maciek.tree;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The synthetic trees shared by the benchmarks.
+ */
+@State(Scope.Benchmark)
+public class TreeState {
+
+	/**
+	 * The number of sampled nodes the lookup benchmarks operate on.
+	 */
+	public static final int SAMPLES = 1024;
+
+	@Param({ "DEEP_CHAIN", "WIDE", "BALANCED", "RANDOM" })
+	public TreeShape shape;
+
+	@Param({ "1000", "100000", "10000000" })
+	public int size;
+
+	/**
+	 * The immutable tree.
+	 */
+	public ImmutableTree<BenchmarkSemantics> immutable;
+
+	/**
+	 * The mutable tree with the same structure.
+	 */
+	public MutableTree<BenchmarkSemantics> mutable;
+
+	/**
+	 * The columnar tree with the same structure.
+	 */
+	public ColumnarTree<BenchmarkSemantics> columnar;
+
+	/**
+	 * The paths of randomly sampled nodes.
+	 */
+	public AbsoluteTreePath[] paths;
+
+	/**
+	 * The randomly sampled immutable tree nodes.
+	 */
+	public ImmutableTreeNode<BenchmarkSemantics>[] immutableNodes;
+
+	/**
+	 * The randomly sampled mutable tree nodes.
+	 */
+	public MutableTreeNode<BenchmarkSemantics>[] mutableNodes;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		immutable = SyntheticTrees.immutable(shape, size);
+		mutable = SyntheticTrees.mutable(shape, size);
+		columnar = immutable.map(ColumnarTree.mapper());
+		paths = SyntheticTrees.samplePaths(immutable, SAMPLES);
+
+		immutableNodes = new ImmutableTreeNode[SAMPLES];
+		mutableNodes = new MutableTreeNode[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			immutableNodes[i] = paths[i].get(immutable);
+			mutableNodes[i] = paths[i].get(mutable);
+		}
+	}
+
+}
@@ -1,9 +1,7 @@
 package maciek.tree;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * An path in the tree leading from the root to given node.
@@ -11,19 +9,105 @@ import java.util.Objects;
  * The path consist of child indexes of ancestors of given node, starting from the root.
  * <p>
  * Can be thought of as a tree node address.
+ * <p>
+ * The path is stored as a link to the parent path and the last child index, so the paths derived by
+ * navigation share their common prefix and are created in constant time.
  */
 public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavigable<AbsoluteTreePath> {
 
 	/**
-	 * The consecutive ancestors child indexes.
+	 * The path of the root.
+	 */
+	private static final AbsoluteTreePath ROOT = new AbsoluteTreePath();
+
+	/**
+	 * The parent path, null for the root path.
+	 */
+	private final AbsoluteTreePath parent;
+
+	/**
+	 * The last child index, -1 for the root path.
 	 */
-	private final List<Integer> ancestorsChildIdx;
+	private final int childIdx;
+
+	/**
+	 * The number of child indexes in the path.
+	 */
+	private final int length;
+
+	/**
+	 * The precomputed hash code, consistent with {@link List#hashCode()} of the child indexes.
+	 */
+	private final int hash;
 
 	/**
 	 * Creates the absolute tree path from the list of consecutive ancestors child indexes.
 	 */
 	public AbsoluteTreePath(List<Integer> ancestorsChildIdx) {
-		this.ancestorsChildIdx = List.copyOf(ancestorsChildIdx);
+		AbsoluteTreePath path = ROOT;
+		for (int i = 0; i < ancestorsChildIdx.size() - 1; i++) {
+			path = path.child(ancestorsChildIdx.get(i));
+		}
+		if (ancestorsChildIdx.isEmpty()) {
+			parent = null;
+			childIdx = -1;
+			length = 0;
+			hash = 1;
+		} else {
+			parent = path;
+			childIdx = ancestorsChildIdx.get(ancestorsChildIdx.size() - 1);
+			length = path.length + 1;
+			hash = 31 * path.hash + childIdx;
+		}
+	}
+
+	/**
+	 * Creates the root path.
+	 */
+	private AbsoluteTreePath() {
+		parent = null;
+		childIdx = -1;
+		length = 0;
+		hash = 1;
+	}
+
+	/**
+	 * Creates the path of the parent path child.
+	 */
+	private AbsoluteTreePath(AbsoluteTreePath parent, int childIdx) {
+		this.parent = parent;
+		this.childIdx = childIdx;
+		this.length = parent.length + 1;
+		this.hash = 31 * parent.hash + childIdx;
+	}
+
+	/**
+	 * Creates the absolute tree path from the consecutive ancestors child indexes.
+	 */
+	public static AbsoluteTreePath of(int... ancestorsChildIdx) {
+		AbsoluteTreePath path = ROOT;
+		for (int idx : ancestorsChildIdx) {
+			path = path.child(idx);
+		}
+		return path;
+	}
+
+	/**
+	 * The number of child indexes in the path, equal to the node depth.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * The consecutive ancestors child indexes, starting from the root.
+	 */
+	public int[] toArray() {
+		int[] idx = new int[length];
+		for (AbsoluteTreePath p = this; p.length > 0; p = p.parent) {
+			idx[p.length - 1] = p.childIdx;
+		}
+		return idx;
 	}
 
 	/**
@@ -38,7 +122,7 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	 */
 	<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> N get(N root) {
 		N n = root;
-		for (Integer idx : ancestorsChildIdx) {
+		for (int idx : toArray()) {
 			n = n.child(idx);
 			if (n == null) {
 				return null;
@@ -55,39 +139,60 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	@Override
 	public int compareTo(AbsoluteTreePath o) {
 
-		if (equals(o)) {
-			return 0;
+		AbsoluteTreePath p1 = this;
+		AbsoluteTreePath p2 = o;
+
+		while (p1.length > p2.length) {
+			p1 = p1.parent;
+		}
+		while (p2.length > p1.length) {
+			p2 = p2.parent;
 		}
 
-		Iterator<Integer> it1 = ancestorsChildIdx.iterator();
-		Iterator<Integer> it2 = o.ancestorsChildIdx.iterator();
-
-		while (true) {
-			if (it1.hasNext() && it2.hasNext()) {
-				int c = it1.next().compareTo(it2.next());
-				if (c != 0) {
-					return c;
-				}
-				continue;
-			} else {
-				return it1.hasNext() ? -1 : 1;
+		// the difference closest to the root decides
+		int c = 0;
+		while (p1 != p2 && p1.length > 0) {
+			if (p1.childIdx != p2.childIdx) {
+				c = Integer.compare(p1.childIdx, p2.childIdx);
 			}
+			p1 = p1.parent;
+			p2 = p2.parent;
 		}
 
+		return c != 0 ? c : Integer.compare(length, o.length);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(ancestorsChildIdx);
+		return hash;
 	}
 
 	@Override
 	public boolean equals(Object obj) {
 
+		if (obj == this)
+			return true;
+
 		if (obj == null || !(obj instanceof AbsoluteTreePath))
 			return false;
 
-		return Objects.equals(ancestorsChildIdx, ((AbsoluteTreePath) obj).ancestorsChildIdx);
+		AbsoluteTreePath o = (AbsoluteTreePath) obj;
+
+		if (hash != o.hash || length != o.length)
+			return false;
+
+		// stops at the first shared prefix
+		for (AbsoluteTreePath p1 = this, p2 = o; p1 != p2; p1 = p1.parent, p2 = p2.parent) {
+			if (p1.childIdx != p2.childIdx) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
 	}
 
 	// navigation
@@ -105,7 +210,7 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	 */
 	@Override
 	public AbsoluteTreePath root() {
-		return new AbsoluteTreePath(List.of());
+		return ROOT;
 	}
 
 	/**
@@ -113,7 +218,7 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	 */
 	@Override
 	public AbsoluteTreePath parent() {
-		return new AbsoluteTreePath(ancestorsChildIdx.subList(0, ancestorsChildIdx.size() - 1));
+		return parent;
 	}
 
 	/**
@@ -121,12 +226,7 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	 */
 	@Override
 	public AbsoluteTreePath child(int idx) {
-
-		List<Integer> childPath = new ArrayList<>(ancestorsChildIdx.size() + 1);
-		childPath.addAll(ancestorsChildIdx);
-		childPath.add(idx);
-
-		return new AbsoluteTreePath(childPath);
+		return new AbsoluteTreePath(this, idx);
 	}
 
 	/**
@@ -142,12 +242,10 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	 */
 	@Override
 	public AbsoluteTreePath left() {
-
-		List<Integer> leftPath = new ArrayList<>(ancestorsChildIdx.size());
-		leftPath.addAll(ancestorsChildIdx);
-		leftPath.add(leftPath.remove(ancestorsChildIdx.size() - 1));
-
-		return new AbsoluteTreePath(leftPath);
+		if (parent == null || childIdx == 0) {
+			return null;
+		}
+		return new AbsoluteTreePath(parent, childIdx - 1);
 	}
 
 	/**
@@ -155,12 +253,10 @@ public class AbsoluteTreePath implements Comparable<AbsoluteTreePath>, TreeNavig
 	 */
 	@Override
 	public AbsoluteTreePath right() {
-
-		List<Integer> rightPath = new ArrayList<>(ancestorsChildIdx.size());
-		rightPath.addAll(ancestorsChildIdx);
-		rightPath.add(rightPath.remove(ancestorsChildIdx.size() + 1));
-
-		return new AbsoluteTreePath(rightPath);
+		if (parent == null) {
+			return null;
+		}
+		return new AbsoluteTreePath(parent, childIdx + 1);
 	}
 
 }
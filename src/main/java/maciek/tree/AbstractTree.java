@@ -31,6 +31,13 @@ public abstract class AbstractTree<T extends AbstractTree<T, N, S>, N extends Ab
 		return root;
 	}
 	
+	/**
+	 * Replaces the root of the tree under construction.
+	 */
+	void setRoot(N root) {
+		this.root = root;
+	}
+
 	@Override
 	public N node(AbsoluteTreePath path) {
 		return path.get(this);
@@ -1,7 +1,10 @@
 package maciek.tree;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
  * An abstract implementation of TreeNode.
@@ -28,6 +31,18 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 	 */
 	protected int depth;
 
+	/**
+	 * The node's index in the parent children list.
+	 * <p>
+	 * Up to date only if lower than the parent's {@link #validChildIdx}.
+	 */
+	protected int childIdx = -1;
+
+	/**
+	 * The number of leading children which child indexes are up to date.
+	 */
+	protected int validChildIdx;
+
 	/**
 	 * Constructor for subclasses.
 	 * 
@@ -37,7 +52,18 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 	protected AbstractTreeNode(N parent, List<N> children, S semantics) {
 		p = parent;
 		ch = children;
-		s = semantics.copy(this);
+		s = semantics.isShareable() ? semantics : semantics.copy(this);
+		depth = parent == null ? 0 : parent.depth + 1;
+	}
+
+	/**
+	 * Constructor for the views sharing the stored semantics of another node, not copied.
+	 */
+	AbstractTreeNode(N parent, List<N> children, S semantics, boolean shared) {
+		p = parent;
+		ch = children;
+		s = shared || semantics.isShareable() ? semantics : semantics.copy(this);
+		depth = parent == null ? 0 : parent.depth + 1;
 	}
 
 	/**
@@ -59,7 +85,7 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 	
 	@Override
 	public N child(int idx) {
-		return ch.get(idx);
+		return idx >= 0 && idx < ch.size() ? ch.get(idx) : null;
 	}
 	
 	@Override
@@ -77,7 +103,8 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 		if (p == null)
 			return null;
 
-		return p.children().get(childIndex() - 1);
+		int idx = childIndex();
+		return idx > 0 ? p.ch.get(idx - 1) : null;
 	}
 
 	@Override
@@ -85,22 +112,45 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 		if (p == null)
 			return null;
 
-		return p.children().get(childIndex() + 1);
+		int idx = childIndex();
+		return idx + 1 < p.ch.size() ? p.ch.get(idx + 1) : null;
 	}
 
 	@Override
 	public List<N> children() {
-		return new LinkedList<>(ch);
+		return new ArrayList<>(ch);
+	}
+
+	@Override
+	public List<N> childrenView() {
+		return Collections.unmodifiableList(ch);
+	}
+
+	@Override
+	public int childCount() {
+		return ch.size();
 	}
 
 	@Override
 	public S semantics() {
-		return s.copy(this);
+		return s.isShareable() ? s : s.copy(this);
+	}
+
+	/**
+	 * The semantics of the node to be copied for another node, the stored one if available, so it is copied once.
+	 */
+	@SuppressWarnings("unchecked")
+	static <S extends TreeNodeSemantics<S>> S storedSemantics(TreeNode<?, S> node) {
+		return node instanceof AbstractTreeNode ? ((AbstractTreeNode<?, S>) node).s : node.semantics();
 	}
 
 	@Override
 	public N root() {
-		return p == null ? getThis() : p.root();
+		N n = getThis();
+		while (n.p != null) {
+			n = n.p;
+		}
+		return n;
 	}
 
 	@Override
@@ -110,22 +160,42 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 
 	@Override
 	public List<? extends N> descendants() {
-		
-		LinkedList<N> desc = new LinkedList<>();
-		desc.addAll(ch);
 
-		ch.stream().flatMap(ch -> ch.descendants().stream()).forEach(desc::add);
+		List<N> desc = new ArrayList<>();
+
+		Iterator<N> it = TreeTraversal.preOrder(getThis());
+		it.next();
+		it.forEachRemaining(desc::add);
 
 		return desc;
 	}
 
+	@Override
+	public Iterable<N> preOrder() {
+		return () -> TreeTraversal.preOrder(getThis());
+	}
+
+	@Override
+	public Iterable<N> postOrder() {
+		return () -> TreeTraversal.postOrder(getThis());
+	}
+
+	@Override
+	public Iterable<N> levelOrder() {
+		return () -> TreeTraversal.levelOrder(getThis());
+	}
+
 	@Override
 	public AbsoluteTreePath absoluteTreePath() {
-		LinkedList<Integer> path = new LinkedList<>();
-		for (N n = getThis(); n != null; n = n.p) {
-			path.addFirst(n.childIndex());
+		int length = 0;
+		for (N n = getThis(); n.p != null; n = n.p) {
+			++length;
 		}
-		return new AbsoluteTreePath(path);
+		int[] idx = new int[length];
+		for (N n = getThis(); n.p != null; n = n.p) {
+			idx[--length] = n.childIndex();
+		}
+		return AbsoluteTreePath.of(idx);
 	}
 
 	@Override
@@ -140,7 +210,21 @@ public abstract class AbstractTreeNode<N extends AbstractTreeNode<N, S>, S exten
 		if (p == null) {
 			return -1;
 		}
-		return p.children().indexOf(this);
+		if (childIdx < 0 || childIdx >= p.validChildIdx) {
+			p.renumberChildren();
+		}
+		return childIdx;
+	}
+
+	/**
+	 * Updates the child indexes of the children following the ones up to date.
+	 */
+	protected void renumberChildren() {
+		for (ListIterator<N> it = ch.listIterator(validChildIdx); it.hasNext();) {
+			int idx = it.nextIndex();
+			it.next().childIdx = idx;
+		}
+		validChildIdx = ch.size();
 	}
 
 }
@@ -0,0 +1,136 @@
+package maciek.tree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The compact binary tree format.
+ * <p>
+ * Each node event is a varint: 0 exits the node, n &gt; 0 enters the node with the semantics encoded in the following
+ * n - 1 bytes.
+ */
+final class BinaryTreeCodec implements TreeCodec {
+
+	static final BinaryTreeCodec INSTANCE = new BinaryTreeCodec();
+
+	private BinaryTreeCodec() {
+	}
+
+	@Override
+	public String name() {
+		return "binary";
+	}
+
+	@Override
+	public <S extends TreeNodeSemantics<S>> TreeEventHandler<S> encoder(OutputStream out, SemanticsCodec<S> codec) {
+		return new Encoder<>(out, codec);
+	}
+
+	@Override
+	public <S extends TreeNodeSemantics<S>> void decode(InputStream in, SemanticsCodec<S> codec,
+			TreeEventHandler<S> handler) throws IOException {
+
+		byte[] record = new byte[64];
+		long depth = 0;
+		do {
+			long event = readVarint(in);
+			if (event == 0) {
+				if (depth == 0) {
+					throw new IOException("Exit event without the node entered");
+				}
+				depth--;
+				handler.exitNode();
+			} else {
+				int length = Math.toIntExact(event - 1);
+				if (length > record.length) {
+					record = new byte[Math.max(length, record.length * 2)];
+				}
+				readFully(in, record, length);
+				S semantics = codec.read(new DataInputStream(new ByteArrayInputStream(record, 0, length)));
+				depth++;
+				handler.enterNode(semantics);
+			}
+		} while (depth > 0);
+	}
+
+	static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static void readFully(InputStream in, byte[] b, int length) throws IOException {
+		for (int off = 0; off < length;) {
+			int n = in.read(b, off, length - off);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			off += n;
+		}
+	}
+
+	/**
+	 * Encodes the node events.
+	 */
+	private static final class Encoder<S extends TreeNodeSemantics<S>> implements TreeEventHandler<S> {
+
+		private final OutputStream out;
+
+		private final SemanticsCodec<S> codec;
+
+		private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+		private final DataOutputStream recordOut = new DataOutputStream(record);
+
+		private long depth;
+
+		Encoder(OutputStream out, SemanticsCodec<S> codec) {
+			this.out = new BufferedOutputStream(out, 1 << 16);
+			this.codec = codec;
+		}
+
+		@Override
+		public void enterNode(S semantics) throws IOException {
+			record.reset();
+			codec.write(semantics, recordOut);
+			recordOut.flush();
+			writeVarint(out, record.size() + 1L);
+			record.writeTo(out);
+			depth++;
+		}
+
+		@Override
+		public void exitNode() throws IOException {
+			out.write(0);
+			if (--depth == 0) {
+				out.flush();
+			}
+		}
+
+	}
+
+}
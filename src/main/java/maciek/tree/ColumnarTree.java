@@ -0,0 +1,109 @@
+package maciek.tree;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A read-only tree with the structure stored in primitive columns.
+ * <p>
+ * Optimized for very large trees: the nodes are numbered in pre-order and their structure is kept in a few int
+ * columns, on the heap or off-heap, instead of an object per node. The nodes are flyweights created on access.
+ * <p>
+ * Built by mapping any tree with the {@link #mapper()}. The tree is not added to its history, mapping it to an
+ * immutable tree would defeat the compact storage.
+ */
+public class ColumnarTree<S extends TreeNodeSemantics<S>> implements Tree<ColumnarTree<S>, ColumnarTreeNode<S>, S> {
+
+	/**
+	 * The root.
+	 */
+	private final ColumnarTreeNode<S> root;
+
+	/**
+	 * The previous versions.
+	 */
+	private final TreeSnapshots<S> treeSnapshots;
+
+	/**
+	 * Protected constructor.
+	 * 
+	 * @param root the root completed by the factory
+	 */
+	protected ColumnarTree(ColumnarTreeNode<S> root, TreeSnapshots<S> treeSnapshots) {
+		this.root = root;
+		this.treeSnapshots = treeSnapshots;
+	}
+
+	/**
+	 * The factory for columnar nodes kept on the heap.
+	 */
+	public static final <S extends TreeNodeSemantics<S>> TreeNodeFactory.Columnar<S> nodeFactory() {
+		return new TreeNodeFactory.Columnar<>(false);
+	}
+
+	/**
+	 * The mapper to columnar tree kept on the heap.
+	 */
+	public static final <S extends TreeNodeSemantics<S>> TreeMapper<ColumnarTree<S>, ColumnarTreeNode<S>, S> mapper() {
+		return mapper(false);
+	}
+
+	/**
+	 * The mapper to columnar tree.
+	 * 
+	 * @param offHeap whether the structure is kept in direct buffers
+	 */
+	public static final <S extends TreeNodeSemantics<S>> TreeMapper<ColumnarTree<S>, ColumnarTreeNode<S>, S> mapper(
+			boolean offHeap) {
+		return new TreeMapper<ColumnarTree<S>, ColumnarTreeNode<S>, S>(ColumnarTree::new,
+				new TreeNodeFactory.Columnar<>(offHeap));
+	}
+
+	@Override
+	public ColumnarTreeNode<S> root() {
+		return root;
+	}
+
+	@Override
+	public ColumnarTreeNode<S> node(AbsoluteTreePath path) {
+		return path.get(this);
+	}
+
+	/**
+	 * The node at given pre-order index.
+	 */
+	public ColumnarTreeNode<S> node(int index) {
+		return nodes().get(index);
+	}
+
+	/**
+	 * The number of nodes.
+	 */
+	public int size() {
+		return root.subtreeSize();
+	}
+
+	@Override
+	public TreeSnapshots<S> treeSnapshots() {
+		return treeSnapshots;
+	}
+
+	@Override
+	public ColumnarTree<S> copy() {
+		return this;
+	}
+
+	/**
+	 * All the nodes of the tree in pre-order, created on access.
+	 */
+	@Override
+	public List<ColumnarTreeNode<S>> nodes() {
+		return root.preOrder();
+	}
+
+	@Override
+	public Iterator<ColumnarTreeNode<S>> iterator() {
+		return nodes().iterator();
+	}
+
+}
@@ -0,0 +1,191 @@
+package maciek.tree;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar tree node implementation.
+ * <p>
+ * A lightweight flyweight of a node stored in the {@link ColumnarTree} columns, created on demand. The flyweights of
+ * the same node are equal.
+ */
+public final class ColumnarTreeNode<S extends TreeNodeSemantics<S>> implements TreeNode<ColumnarTreeNode<S>, S> {
+
+	/**
+	 * The tree columns.
+	 */
+	private final TreeColumns<S> columns;
+
+	/**
+	 * The node pre-order index.
+	 */
+	private final int idx;
+
+	ColumnarTreeNode(TreeColumns<S> columns, int idx) {
+		this.columns = columns;
+		this.idx = idx;
+	}
+
+	/**
+	 * The node index in the tree pre-order.
+	 */
+	public int index() {
+		return idx;
+	}
+
+	/**
+	 * The number of nodes in the subtree, this node included.
+	 */
+	public int subtreeSize() {
+		return columns.subtreeSize(idx);
+	}
+
+	/**
+	 * This node child index in its parent children list.
+	 */
+	public int childIndex() {
+		return columns.childIndex(idx);
+	}
+
+	@Override
+	public ColumnarTreeNode<S> path(AbsoluteTreePath absoluteTreePath) {
+		return absoluteTreePath.get(root());
+	}
+
+	@Override
+	public ColumnarTreeNode<S> root() {
+		return idx == 0 ? this : columns.node(0);
+	}
+
+	@Override
+	public ColumnarTreeNode<S> parent() {
+		int p = columns.parent(idx);
+		return p < 0 ? null : columns.node(p);
+	}
+
+	@Override
+	public ColumnarTreeNode<S> child(int childIdx) {
+		return childIdx >= 0 && childIdx < childCount() ? columns.node(columns.child(idx, childIdx)) : null;
+	}
+
+	@Override
+	public ColumnarTreeNode<S> lastChild() {
+		return child(childCount() - 1);
+	}
+
+	@Override
+	public ColumnarTreeNode<S> left() {
+		int p = columns.parent(idx);
+		int childIdx = columns.childIndex(idx);
+		return p < 0 || childIdx == 0 ? null : columns.node(columns.child(p, childIdx - 1));
+	}
+
+	@Override
+	public ColumnarTreeNode<S> right() {
+		int next = columns.nextSibling(idx);
+		return next < 0 ? null : columns.node(next);
+	}
+
+	@Override
+	public List<ColumnarTreeNode<S>> children() {
+		return new ArrayList<>(childrenView());
+	}
+
+	@Override
+	public List<ColumnarTreeNode<S>> childrenView() {
+		return new Children();
+	}
+
+	@Override
+	public int childCount() {
+		return columns.childCount(idx);
+	}
+
+	@Override
+	public S semantics() {
+		S s = columns.semantics(idx);
+		return s.isShareable() ? s : s.copy(this);
+	}
+
+	/**
+	 * The descendants of this node, the nodes following it in pre-order within its subtree.
+	 */
+	@Override
+	public List<ColumnarTreeNode<S>> descendants() {
+		return columns.nodes(idx + 1, idx + columns.subtreeSize(idx));
+	}
+
+	/**
+	 * This node and its descendants, the nodes of its subtree in pre-order.
+	 */
+	@Override
+	public List<ColumnarTreeNode<S>> preOrder() {
+		return columns.nodes(idx, idx + columns.subtreeSize(idx));
+	}
+
+	@Override
+	public Iterable<ColumnarTreeNode<S>> postOrder() {
+		return () -> TreeTraversal.postOrder(this);
+	}
+
+	@Override
+	public Iterable<ColumnarTreeNode<S>> levelOrder() {
+		return () -> TreeTraversal.levelOrder(this);
+	}
+
+	@Override
+	public AbsoluteTreePath absoluteTreePath() {
+		int[] path = new int[columns.depth(idx)];
+		for (int n = idx, i = path.length - 1; i >= 0; n = columns.parent(n), i--) {
+			path[i] = columns.childIndex(n);
+		}
+		return AbsoluteTreePath.of(path);
+	}
+
+	@Override
+	public int depth() {
+		return columns.depth(idx);
+	}
+
+	@Override
+	public ImmutableTree<S> subtree() {
+		return ImmutableTree.<S>mapper().map(this);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(columns) + idx;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ColumnarTreeNode)) {
+			return false;
+		}
+		ColumnarTreeNode<?> o = (ColumnarTreeNode<?>) obj;
+		return columns == o.columns && idx == o.idx;
+	}
+
+	/**
+	 * The children flyweights created on access.
+	 */
+	private final class Children extends AbstractList<ColumnarTreeNode<S>> implements RandomAccess {
+
+		@Override
+		public ColumnarTreeNode<S> get(int childIdx) {
+			if (childIdx < 0 || childIdx >= size()) {
+				throw new IndexOutOfBoundsException(childIdx);
+			}
+			return columns.node(columns.child(idx, childIdx));
+		}
+
+		@Override
+		public int size() {
+			return childCount();
+		}
+
+	}
+
+}
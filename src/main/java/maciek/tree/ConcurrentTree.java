@@ -0,0 +1,133 @@
+package maciek.tree;
+
+import java.util.List;
+
+/**
+ * A tree modified by a single writer at a time and read concurrently without locks.
+ * <p>
+ * The writer applies the {@link TreeModification modifications} to the mutable tree owned by this tree and publishes
+ * its immutable version atomically. Only the paths modified since the previous version are mapped, the rest of the
+ * tree is shared with it. The readers get the most recently published version, a consistent point-in-time view which
+ * is never modified, without blocking the writer or being blocked by it.
+ * <p>
+ * The writers are serialized. Each published version is snapshotted after the previous one, following the history of
+ * the tree this tree was created of. The history retains only the {@link #DEFAULT_HISTORY most recent} versions
+ * unless another retention policy is given.
+ */
+public final class ConcurrentTree<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * The default number of the most recent published versions retained in the history.
+	 */
+	public static final int DEFAULT_HISTORY = 16;
+
+	/**
+	 * The mapper publishing the versions, reusing the subtrees not modified since the previous version.
+	 */
+	private final TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S> mapper = ImmutableTree
+			.mapper(new TreeNodeFactory.Incremental<S>());
+
+	/**
+	 * The history of the most recently published version, guarded by this.
+	 */
+	private TreeSnapshots<S> treeSnapshots;
+
+	/**
+	 * The tree modified by the writer, guarded by this.
+	 */
+	private MutableTree<S> tree;
+
+	/**
+	 * The most recently published version.
+	 */
+	private volatile Version<S> published;
+
+	/**
+	 * Creates the concurrent tree of the tree structure and publishes its first version.
+	 * <p>
+	 * The history retains the {@link #DEFAULT_HISTORY} most recent versions.
+	 */
+	public ConcurrentTree(Tree<?, ?, S> tree) {
+		this(tree, SnapshotRetentionPolicy.keepLast(DEFAULT_HISTORY));
+	}
+
+	/**
+	 * Creates the concurrent tree of the tree structure and publishes its first version.
+	 *
+	 * @param retention the policy of the history of the published versions
+	 */
+	public ConcurrentTree(Tree<?, ?, S> tree, SnapshotRetentionPolicy retention) {
+		this.tree = MutableTree.<S>mapper().map(tree);
+		ImmutableTree<S> first = mapper.map(this.tree.root(), tree.treeSnapshots().withRetention(retention));
+		this.treeSnapshots = first.treeSnapshots();
+		this.published = new Version<>(first, 0);
+	}
+
+	/**
+	 * The most recently published version.
+	 */
+	public ImmutableTree<S> get() {
+		return published.tree;
+	}
+
+	/**
+	 * The number of versions published after the first one.
+	 */
+	public long version() {
+		return published.number;
+	}
+
+	/**
+	 * Applies the modification and publishes the modified version.
+	 * <p>
+	 * The modification must not retain the mutable tree it is given. If the modification fails, the tree is restored
+	 * to the published version and the exception is rethrown.
+	 *
+	 * @return the published version
+	 */
+	public ImmutableTree<S> apply(TreeModification<S> modification) {
+		return apply(List.of(modification));
+	}
+
+	/**
+	 * Applies the modifications in order and publishes the modified version once.
+	 * <p>
+	 * The modifications must not retain the mutable tree they are given. If any modification fails, the tree is
+	 * restored to the published version and the exception is rethrown, so none of the modifications is published.
+	 *
+	 * @return the published version
+	 */
+	public synchronized ImmutableTree<S> apply(List<? extends TreeModification<S>> modifications) {
+		Version<S> current = published;
+		try {
+			for (TreeModification<S> modification : modifications) {
+				modification.transform(tree);
+			}
+		} catch (RuntimeException | Error e) {
+			tree = MutableTree.<S>mapper().map(current.tree);
+			tree.root().mappedFrom(current.tree.root().body());
+			throw e;
+		}
+		ImmutableTree<S> modified = mapper.map(tree.root(), treeSnapshots);
+		treeSnapshots = modified.treeSnapshots();
+		published = new Version<>(modified, current.number + 1);
+		return modified;
+	}
+
+	/**
+	 * A published version and its number.
+	 */
+	private static final class Version<S extends TreeNodeSemantics<S>> {
+
+		final ImmutableTree<S> tree;
+
+		final long number;
+
+		Version(ImmutableTree<S> tree, long number) {
+			this.tree = tree;
+			this.number = number;
+		}
+
+	}
+
+}
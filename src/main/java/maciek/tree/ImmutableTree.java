@@ -1,7 +1,12 @@
 package maciek.tree;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.UnaryOperator;
+
+import maciek.tree.ImmutableTreeNode.Body;
 
 /**
  * A tree with immutable structure.
@@ -10,20 +15,25 @@ import java.util.stream.Collectors;
  * <p>
  * Using immutable tree as a method parameter expresses better that it is IN parameter and won't be modified.
  * <p>
- * Provides equals and hashcode.
+ * Provides equals and hashcode, based on the subtree hashes computed when the tree is built.
  */
 public class ImmutableTree<S extends TreeNodeSemantics<S>>
 		extends AbstractTree<ImmutableTree<S>, ImmutableTreeNode<S>, S> {
 
 	/**
-	 * The cache of tree nodes.
+	 * The cache of tree semantics, built on first use.
 	 */
-	private Map<AbsoluteTreePath, ImmutableTreeNode<S>> nodesCache;
-	
+	private volatile Map<AbsoluteTreePath, S> semanticsCache;
+
+	/**
+	 * The ancestry index, built on first use.
+	 */
+	private volatile TreeAncestry<S> ancestry;
+
 	/**
-	 * The cache of tree semantics.
+	 * The registered secondary indexes, replaced on registration.
 	 */
-	private Map<AbsoluteTreePath, S> semanticsCache;
+	private volatile Map<TreeNodeIndex.Key<S, ?>, TreeNodeIndex<S, ?>> indexes = Collections.emptyMap();
 
 	/**
 	 * Protected constructor.
@@ -46,20 +56,219 @@ public class ImmutableTree<S extends TreeNodeSemantics<S>>
 		return new TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S>(ImmutableTree::new, nodeFactory());
 	}
 
+	/**
+	 * The mapper to immutable tree creating the nodes with given factory.
+	 * <p>
+	 * Use {@link TreeNodeFactory.Interning} to share the identical subtrees, {@link TreeNodeFactory.Incremental} to
+	 * map again only the modified subtrees of the mutable tree.
+	 */
+	public static final <S extends TreeNodeSemantics<S>> TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S> mapper(
+			TreeNodeFactory.Immutable<S> nodeFactory) {
+		return new TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S>(ImmutableTree::new, nodeFactory);
+	}
+
+	/**
+	 * All the nodes of the tree in pre-order, read-only, the node at the {@link ImmutableTreeNode#preOrderIndex()}.
+	 */
+	@Override
+	public List<ImmutableTreeNode<S>> nodes() {
+		return root().preOrderNodes();
+	}
+
+	/**
+	 * The mapper to immutable tree building the secondary indexes of given keys once the tree is mapped.
+	 */
+	@SafeVarargs
+	public static final <S extends TreeNodeSemantics<S>> TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S> mapper(
+			TreeNodeIndex.Key<S, ?>... indexKeys) {
+		return new TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S>((root, snapshots) -> {
+			ImmutableTree<S> tree = new ImmutableTree<>(root, snapshots);
+			for (TreeNodeIndex.Key<S, ?> key : indexKeys) {
+				tree.index(key);
+			}
+			return tree;
+		}, nodeFactory());
+	}
+
+	/**
+	 * The node at the path, descending the bodies from the root in O(depth), null if none.
+	 */
 	@Override
 	public ImmutableTreeNode<S> node(AbsoluteTreePath path) {
-		if (nodesCache == null) {
-			nodesCache = nodes().stream().collect(Collectors.toMap(n -> n.absoluteTreePath(), n -> n));
+		ImmutableTreeNode<S> n = root();
+		for (int idx : path.toArray()) {
+			if (idx < 0 || idx >= n.body().children.length) {
+				return null;
+			}
+			n = n.child(idx);
 		}
-		return nodesCache.get(path);
+		return n;
 	}
 
 	@Override
 	public Map<AbsoluteTreePath, S> asMap() {
-		if (semanticsCache == null) {
-			semanticsCache = nodes().stream().collect(Collectors.toMap(n -> n.absoluteTreePath(), n -> n.semantics()));
+		Map<AbsoluteTreePath, S> map = semanticsCache;
+		if (map == null) {
+			synchronized (this) {
+				map = semanticsCache;
+				if (map == null) {
+					map = super.asMap();
+					semanticsCache = map;
+				}
+			}
 		}
-		return semanticsCache;
+		return map;
+	}
+
+	// secondary indexes
+
+	/**
+	 * The secondary index of given key, built and registered on first call.
+	 * <p>
+	 * The registered indexes are used by the {@link TreeNodeQuery queries} of the tree. The trees derived by the
+	 * persistent updates don't inherit the indexes.
+	 */
+	public synchronized <K> TreeNodeIndex<S, K> index(TreeNodeIndex.Key<S, K> key) {
+		TreeNodeIndex<S, K> index = registeredIndex(key);
+		if (index == null) {
+			index = new TreeNodeIndex<>(key, this);
+			Map<TreeNodeIndex.Key<S, ?>, TreeNodeIndex<S, ?>> registered = new HashMap<>(indexes);
+			registered.put(key, index);
+			indexes = registered;
+		}
+		return index;
+	}
+
+	/**
+	 * The registered secondary index of given key, null if not registered.
+	 */
+	@SuppressWarnings("unchecked")
+	<K> TreeNodeIndex<S, K> registeredIndex(TreeNodeIndex.Key<S, K> key) {
+		return (TreeNodeIndex<S, K>) indexes.get(key);
+	}
+
+	// ancestry
+
+	/**
+	 * The lowest common ancestor of the nodes of this tree, a node itself if it is an ancestor of the other one.
+	 * <p>
+	 * Constant time once the ancestry index is built, in O(n log n), on first use.
+	 */
+	public ImmutableTreeNode<S> lca(ImmutableTreeNode<S> a, ImmutableTreeNode<S> b) {
+		return ancestry(a, b).lca(a, b);
+	}
+
+	/**
+	 * The number of edges on the path between the nodes of this tree.
+	 * <p>
+	 * Constant time once the ancestry index is built, in O(n log n), on first use.
+	 */
+	public int distance(ImmutableTreeNode<S> a, ImmutableTreeNode<S> b) {
+		return ancestry(a, b).distance(a, b);
+	}
+
+	/**
+	 * The ancestor k levels above the node of this tree, the node itself for 0, null above the root.
+	 * <p>
+	 * Logarithmic time once the ancestry index is built, in O(n log n), on first use.
+	 */
+	public ImmutableTreeNode<S> kthAncestor(ImmutableTreeNode<S> node, int k) {
+		return ancestry(node, node).kthAncestor(node, k);
+	}
+
+	private TreeAncestry<S> ancestry(ImmutableTreeNode<S> a, ImmutableTreeNode<S> b) {
+		if (a.root() != root() || b.root() != root()) {
+			throw new IllegalArgumentException("The node doesn't belong to the tree");
+		}
+		TreeAncestry<S> built = ancestry;
+		if (built == null) {
+			synchronized (this) {
+				built = ancestry;
+				if (built == null) {
+					built = new TreeAncestry<>(root());
+					ancestry = built;
+				}
+			}
+		}
+		return built;
+	}
+
+	// persistent updates
+
+	/**
+	 * The tree with the subtree at the path replaced.
+	 * <p>
+	 * Only the nodes on the path are copied, the rest of the tree is shared with this tree. Returns this tree if the
+	 * path doesn't exist.
+	 */
+	public ImmutableTree<S> withReplaced(AbsoluteTreePath path, ImmutableTree<S> subtree) {
+		return withUpdated(path, b -> subtree.root().body());
+	}
+
+	/**
+	 * The tree with the subtree inserted as the child at given index of the node at the path.
+	 * <p>
+	 * Only the nodes on the path are copied, the rest of the tree is shared with this tree. Returns this tree if the
+	 * path or the child index doesn't exist.
+	 */
+	public ImmutableTree<S> withInserted(AbsoluteTreePath path, int idx, ImmutableTree<S> subtree) {
+		return withUpdated(path,
+				b -> idx >= 0 && idx <= b.children.length ? b.withChildInserted(idx, subtree.root().body()) : b);
+	}
+
+	/**
+	 * The tree with the subtree at the path removed.
+	 * <p>
+	 * Only the nodes on the path are copied, the rest of the tree is shared with this tree. Returns this tree if the
+	 * path doesn't exist or indicates the root.
+	 */
+	public ImmutableTree<S> withRemoved(AbsoluteTreePath path) {
+		if (path.length() == 0) {
+			return this;
+		}
+		int[] idx = path.toArray();
+		int childIdx = idx[idx.length - 1];
+		return withUpdated(path.parent(),
+				b -> childIdx >= 0 && childIdx < b.children.length ? b.withChildRemoved(childIdx) : b);
+	}
+
+	/**
+	 * The tree with the semantics of the node at the path replaced.
+	 * <p>
+	 * Only the nodes on the path are copied, the rest of the tree is shared with this tree. Returns this tree if the
+	 * path doesn't exist.
+	 */
+	public ImmutableTree<S> withSemantics(AbsoluteTreePath path, S semantics) {
+		return withUpdated(path, b -> b.withSemantics(semantics));
+	}
+
+	/**
+	 * The tree with the body at the path updated and the path spine copied.
+	 */
+	private ImmutableTree<S> withUpdated(AbsoluteTreePath path, UnaryOperator<Body<S>> update) {
+
+		int[] idx = path.toArray();
+
+		@SuppressWarnings("unchecked")
+		Body<S>[] spine = new Body[idx.length + 1];
+		spine[0] = root().body();
+		for (int i = 0; i < idx.length; i++) {
+			Body<S>[] children = spine[i].children;
+			if (idx[i] < 0 || idx[i] >= children.length) {
+				return this;
+			}
+			spine[i + 1] = children[idx[i]];
+		}
+
+		Body<S> b = update.apply(spine[idx.length]);
+		if (b == spine[idx.length]) {
+			return this;
+		}
+		for (int i = idx.length - 1; i >= 0; i--) {
+			b = spine[i].withChild(idx[i], b);
+		}
+
+		return new ImmutableTree<>(new ImmutableTreeNode<>(b), treeSnapshots());
 	}
 
 	@Override
@@ -74,7 +283,7 @@ public class ImmutableTree<S extends TreeNodeSemantics<S>>
 
 	@Override
 	public int hashCode() {
-		return nodesCache.hashCode();
+		return root().body().hash;
 	}
 
 	@Override
@@ -88,7 +297,7 @@ public class ImmutableTree<S extends TreeNodeSemantics<S>>
 		@SuppressWarnings("unchecked")
 		ImmutableTree<S> o = (ImmutableTree<S>) obj;
 
-		return asMap().equals(o.asMap());
+		return root().body().sameAs(o.root().body());
 	}
 
 }
\ No newline at end of file
@@ -1,34 +1,47 @@
 package maciek.tree;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Immutable tree node implementation.
  * <p>
  * Safe to use and optimized for tree querying.
+ * <p>
+ * The node is a view of its {@link Body}, the part independent of the parent, which is shared between the tree
+ * versions. The views of a body children are created on demand, so the untouched subtrees of an updated tree are
+ * shared with the previous version.
  */
 public class ImmutableTreeNode<S extends TreeNodeSemantics<S>> extends AbstractTreeNode<ImmutableTreeNode<S>, S> {
 
 	/**
-	 * The root cache.
+	 * The parent independent part of the node, set once the children are created.
 	 */
-	private ImmutableTreeNode<S> rootCache;
+	private Body<S> body;
 
 	/**
-	 * The left sibling cache.
+	 * The root cache.
 	 */
-	private ImmutableTreeNode<S> leftSiblingCache;
+	private ImmutableTreeNode<S> rootCache;
 
 	/**
-	 * The right sibling cache.
+	 * The pre-order index of the node in the tree, -1 until computed.
 	 */
-	private ImmutableTreeNode<S> rightSiblingCache;
+	private int pre = -1;
 
 	/**
-	 * The descendants cache.
+	 * The tree nodes in pre-order, cached by the root.
 	 */
-	private List<? extends ImmutableTreeNode<S>> descendantsCache;
+	private List<ImmutableTreeNode<S>> preOrderCache;
 
 	/**
 	 * The absolute tree path cache.
@@ -42,6 +55,73 @@ public class ImmutableTreeNode<S extends TreeNodeSemantics<S>> extends AbstractT
 		super(parent, children, semantics);
 	}
 
+	/**
+	 * Creates the root view of the body.
+	 */
+	ImmutableTreeNode(Body<S> body) {
+		this(null, body, -1);
+		this.pre = 0;
+	}
+
+	/**
+	 * The view of the body at given child index of the parent, the root view for null parent.
+	 */
+	static <S extends TreeNodeSemantics<S>> ImmutableTreeNode<S> view(ImmutableTreeNode<S> parent, Body<S> body,
+			int childIdx) {
+		return parent == null ? new ImmutableTreeNode<>(body) : new ImmutableTreeNode<>(parent, body, childIdx);
+	}
+
+	/**
+	 * Creates the view of the body at given child index of the parent, sharing the body semantics.
+	 */
+	private ImmutableTreeNode(ImmutableTreeNode<S> parent, Body<S> body, int childIdx) {
+		super(parent, null, body.semantics, true);
+		this.body = body;
+		this.ch = new ChildViews(body.children.length);
+		this.childIdx = childIdx;
+		this.validChildIdx = body.children.length;
+	}
+
+	/**
+	 * The parent independent part of the node.
+	 * <p>
+	 * Completes the nodes which children were created without notifying the factory.
+	 */
+	Body<S> body() {
+		if (body == null) {
+			for (Iterator<ImmutableTreeNode<S>> it = TreeTraversal.postOrder(this); it.hasNext();) {
+				ImmutableTreeNode<S> n = it.next();
+				if (n.body == null) {
+					n.complete();
+				}
+			}
+		}
+		return body;
+	}
+
+	/**
+	 * Creates the body once all the children are created.
+	 */
+	void complete() {
+		@SuppressWarnings("unchecked")
+		Body<S>[] children = new Body[ch.size()];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = ch.get(i).body();
+		}
+		body = new Body<>(s, children);
+	}
+
+	/**
+	 * Replaces the body with the canonical one and the children with the views of its children, releasing the
+	 * created children.
+	 */
+	void intern(TreeNodeFactory.Interning<S> interning) {
+		body = interning.intern(body());
+		s = body.semantics;
+		ch = new ChildViews(body.children.length);
+		validChildIdx = body.children.length;
+	}
+
 	@Override
 	protected ImmutableTreeNode<S> getThis() {
 		return this;
@@ -52,31 +132,103 @@ public class ImmutableTreeNode<S extends TreeNodeSemantics<S>> extends AbstractT
 		if (rootCache != null) {
 			return rootCache;
 		}
-		return rootCache = super.root();
+		ImmutableTreeNode<S> root = this;
+		while (root.rootCache == null && root.p != null) {
+			root = root.p;
+		}
+		if (root.rootCache != null) {
+			root = root.rootCache;
+		}
+		for (ImmutableTreeNode<S> n = this; n != null && n.rootCache == null; n = n.p) {
+			n.rootCache = root;
+		}
+		return root;
 	}
 
+	/**
+	 * The descendants of this node, the range of the tree pre-order nodes following it within its subtree.
+	 */
 	@Override
-	public ImmutableTreeNode<S> left() {
-		if (leftSiblingCache != null) {
-			return leftSiblingCache;
-		}
-		return leftSiblingCache = super.left();
+	public List<ImmutableTreeNode<S>> descendants() {
+		int from = preOrderIndex();
+		return root().preOrderNodes().subList(from + 1, from + subtreeSize());
 	}
 
-	@Override
-	public ImmutableTreeNode<S> right() {
-		if (rightSiblingCache != null) {
-			return rightSiblingCache;
+	/**
+	 * The index of this node in the tree pre-order, the root being 0.
+	 * <p>
+	 * The subtree of this node is the range of the pre-order indexes from this node index up to the index plus the
+	 * subtree size.
+	 */
+	public int preOrderIndex() {
+		if (pre >= 0) {
+			return pre;
+		}
+
+		// the ancestors which indexes are not computed yet, the nearest first
+		List<ImmutableTreeNode<S>> pending = new ArrayList<>();
+		ImmutableTreeNode<S> n = this;
+		while (n.pre < 0 && n.p != null) {
+			pending.add(n);
+			n = n.p;
+		}
+		if (n.pre < 0) {
+			n.pre = 0;
 		}
-		return rightSiblingCache = super.right();
+		for (int i = pending.size() - 1; i >= 0; i--) {
+			ImmutableTreeNode<S> child = pending.get(i);
+			child.pre = child.p.pre + child.p.body().offsets[child.childIndex()];
+		}
+		return pre;
 	}
 
-	@Override
-	public List<? extends ImmutableTreeNode<S>> descendants() {
-		if (descendantsCache != null) {
-			return descendantsCache;
+	/**
+	 * The number of nodes in the subtree of this node, this node included.
+	 */
+	public int subtreeSize() {
+		return body().size;
+	}
+
+	/**
+	 * Whether this node is a proper ancestor of the other node of the same tree.
+	 */
+	public boolean isAncestorOf(ImmutableTreeNode<S> other) {
+		int from = preOrderIndex();
+		int idx = other.preOrderIndex();
+		return from < idx && idx < from + subtreeSize() && root() == other.root();
+	}
+
+	/**
+	 * Whether this node is a proper descendant of the other node of the same tree.
+	 */
+	public boolean isDescendantOf(ImmutableTreeNode<S> other) {
+		return other.isAncestorOf(this);
+	}
+
+	/**
+	 * Compares the nodes of the same tree in the document order, the pre-order.
+	 */
+	public int compareDocumentOrder(ImmutableTreeNode<S> other) {
+		return Integer.compare(preOrderIndex(), other.preOrderIndex());
+	}
+
+	/**
+	 * The tree nodes in pre-order, read-only, cached by the root.
+	 */
+	List<ImmutableTreeNode<S>> preOrderNodes() {
+		ImmutableTreeNode<S> root = root();
+		if (root.preOrderCache == null) {
+			@SuppressWarnings("unchecked")
+			ImmutableTreeNode<S>[] nodes = new ImmutableTreeNode[root.subtreeSize()];
+			int i = 0;
+			for (Iterator<ImmutableTreeNode<S>> it = TreeTraversal.preOrder(root); it.hasNext();) {
+				ImmutableTreeNode<S> n = it.next();
+				n.pre = i;
+				nodes[i++] = n;
+			}
+			root.preOrderCache = Collections.unmodifiableList(Arrays.asList(nodes));
 		}
-		return descendantsCache = super.descendants();
+		return root.preOrderCache;
 	}
 
 	@Override
@@ -84,7 +236,166 @@ public class ImmutableTreeNode<S extends TreeNodeSemantics<S>> extends AbstractT
 		if (absoluteTreePathCache != null) {
 			return absoluteTreePathCache;
 		}
-		return absoluteTreePathCache = parent().absoluteTreePath().child(childIndex());
+
+		// the ancestors without the path, up to the first one with the path or the root
+		List<ImmutableTreeNode<S>> uncached = new ArrayList<>();
+		ImmutableTreeNode<S> n = this;
+		while (n != null && n.absoluteTreePathCache == null) {
+			uncached.add(n);
+			n = n.p;
+		}
+		AbsoluteTreePath path = n == null ? null : n.absoluteTreePathCache;
+		for (int i = uncached.size() - 1; i >= 0; i--) {
+			n = uncached.get(i);
+			path = path == null ? AbsoluteTreePath.of() : path.child(n.childIndex());
+			n.absoluteTreePathCache = path;
+		}
+		return path;
+	}
+
+	/**
+	 * The children views created on demand.
+	 */
+	private final class ChildViews extends AbstractList<ImmutableTreeNode<S>> implements RandomAccess {
+
+		private final AtomicReferenceArray<ImmutableTreeNode<S>> views;
+
+		ChildViews(int size) {
+			views = new AtomicReferenceArray<>(size);
+		}
+
+		@Override
+		public ImmutableTreeNode<S> get(int idx) {
+			ImmutableTreeNode<S> view = views.get(idx);
+			if (view == null) {
+				views.compareAndSet(idx, null, new ImmutableTreeNode<>(ImmutableTreeNode.this, body.children[idx], idx));
+				view = views.get(idx);
+			}
+			return view;
+		}
+
+		@Override
+		public int size() {
+			return views.length();
+		}
+
+	}
+
+	/**
+	 * The part of the node independent of its parent: the semantics and the children bodies.
+	 * <p>
+	 * Immutable, shared between the tree versions. Carries the subtree hash computed from the semantics and the
+	 * children hashes, so the subtrees which differ are told apart without traversing them.
+	 */
+	static final class Body<S extends TreeNodeSemantics<S>> {
+
+		final S semantics;
+
+		final Body<S>[] children;
+
+		/**
+		 * The number of nodes in the subtree.
+		 */
+		final int size;
+
+		/**
+		 * The subtree hash.
+		 */
+		final int hash;
+
+		/**
+		 * The offsets of the children subtrees in the pre-order of this subtree.
+		 */
+		final int[] offsets;
+
+		Body(S semantics, Body<S>[] children) {
+			this.semantics = semantics;
+			this.children = children;
+			int size = 1;
+			int hash = 31 * Objects.hashCode(semantics) + children.length;
+			int[] offsets = new int[children.length];
+			for (int i = 0; i < children.length; i++) {
+				offsets[i] = size;
+				size += children[i].size;
+				hash = 31 * hash + children[i].hash;
+			}
+			this.offsets = offsets;
+			this.size = size;
+			this.hash = hash;
+		}
+
+		/**
+		 * The number of nodes in the subtree.
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Whether the subtrees have equal structure and semantics.
+		 * <p>
+		 * Compares the subtrees only if the hashes are equal, the shared subtrees are not compared.
+		 */
+		boolean sameAs(Body<S> other) {
+
+			Deque<Body<S>> pending = new ArrayDeque<>();
+			pending.push(this);
+			pending.push(other);
+
+			while (!pending.isEmpty()) {
+				Body<S> b = pending.pop();
+				Body<S> a = pending.pop();
+				if (a == b) {
+					continue;
+				}
+				if (a.hash != b.hash || a.size != b.size || a.children.length != b.children.length || !Objects.equals(a.semantics, b.semantics)) {
+					return false;
+				}
+				for (int i = 0; i < a.children.length; i++) {
+					pending.push(a.children[i]);
+					pending.push(b.children[i]);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * The copy with the semantics replaced.
+		 */
+		Body<S> withSemantics(S semantics) {
+			return new Body<>(semantics, children);
+		}
+
+		/**
+		 * The copy with the child at index replaced.
+		 */
+		Body<S> withChild(int idx, Body<S> child) {
+			Body<S>[] copy = children.clone();
+			copy[idx] = child;
+			return new Body<>(semantics, copy);
+		}
+
+		/**
+		 * The copy with the child inserted at index.
+		 */
+		Body<S> withChildInserted(int idx, Body<S> child) {
+			Body<S>[] copy = Arrays.copyOf(children, children.length + 1);
+			System.arraycopy(children, idx, copy, idx + 1, children.length - idx);
+			copy[idx] = child;
+			return new Body<>(semantics, copy);
+		}
+
+		/**
+		 * The copy with the child at index removed.
+		 */
+		Body<S> withChildRemoved(int idx) {
+			@SuppressWarnings("unchecked")
+			Body<S>[] copy = new Body[children.length - 1];
+			System.arraycopy(children, 0, copy, 0, idx);
+			System.arraycopy(children, idx + 1, copy, idx, children.length - idx - 1);
+			return new Body<>(semantics, copy);
+		}
+
 	}
 
 }
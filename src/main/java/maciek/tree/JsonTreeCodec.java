@@ -0,0 +1,286 @@
+package maciek.tree;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The JSON tree format.
+ * <p>
+ * Each node is an object with the semantics text under "s" and the children array under "c", the semantics first:
+ * <code>{"s":"root","c":[{"s":"leaf","c":[]}]}</code>. The children array may be omitted for a leaf.
+ */
+final class JsonTreeCodec implements TreeCodec {
+
+	static final JsonTreeCodec INSTANCE = new JsonTreeCodec();
+
+	private JsonTreeCodec() {
+	}
+
+	@Override
+	public String name() {
+		return "json";
+	}
+
+	@Override
+	public <S extends TreeNodeSemantics<S>> TreeEventHandler<S> encoder(OutputStream out, SemanticsCodec<S> codec) {
+		return new Encoder<>(out, codec);
+	}
+
+	@Override
+	public <S extends TreeNodeSemantics<S>> void decode(InputStream in, SemanticsCodec<S> codec,
+			TreeEventHandler<S> handler) throws IOException {
+		new Decoder<>(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16), codec, handler)
+				.decode();
+	}
+
+	/**
+	 * Encodes the node events.
+	 */
+	private static final class Encoder<S extends TreeNodeSemantics<S>> implements TreeEventHandler<S> {
+
+		private final Writer out;
+
+		private final SemanticsCodec<S> codec;
+
+		/**
+		 * Whether the last event exited a node, so the next entered node is its sibling.
+		 */
+		private boolean exited;
+
+		private long depth;
+
+		Encoder(OutputStream out, SemanticsCodec<S> codec) {
+			this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+			this.codec = codec;
+		}
+
+		@Override
+		public void enterNode(S semantics) throws IOException {
+			if (exited) {
+				out.write(',');
+			}
+			out.write("{\"s\":");
+			writeString(codec.toText(semantics));
+			out.write(",\"c\":[");
+			exited = false;
+			depth++;
+		}
+
+		@Override
+		public void exitNode() throws IOException {
+			out.write("]}");
+			exited = true;
+			if (--depth == 0) {
+				out.flush();
+			}
+		}
+
+		private void writeString(String s) throws IOException {
+			out.write('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				switch (c) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						out.write(String.format("\\u%04x", (int) c));
+					} else {
+						out.write(c);
+					}
+				}
+			}
+			out.write('"');
+		}
+
+	}
+
+	/**
+	 * Decodes the node events, iterating the nested objects without recursion.
+	 */
+	private static final class Decoder<S extends TreeNodeSemantics<S>> {
+
+		private final Reader in;
+
+		private final SemanticsCodec<S> codec;
+
+		private final TreeEventHandler<S> handler;
+
+		/**
+		 * The character read ahead, -2 if none.
+		 */
+		private int ahead = -2;
+
+		Decoder(Reader in, SemanticsCodec<S> codec, TreeEventHandler<S> handler) {
+			this.in = in;
+			this.codec = codec;
+			this.handler = handler;
+		}
+
+		void decode() throws IOException {
+
+			// the number of the entered nodes which children array is being read
+			long arrays = 0;
+			// whether the current node semantics has been read
+			boolean entered = false;
+
+			expect('{');
+			while (true) {
+				// a key of the current node
+				String key = readString();
+				expect(':');
+				if (key.equals("s") && !entered) {
+					handler.enterNode(codec.fromText(readString()));
+					entered = true;
+				} else if (key.equals("c") && entered) {
+					expect('[');
+					if (peek() == '{') {
+						next();
+						arrays++;
+						entered = false;
+						continue;
+					}
+					expect(']');
+				} else {
+					throw new IOException("Unexpected key: " + key);
+				}
+
+				// after the value of the current node, ends the nodes and their parents arrays
+				while (true) {
+					int c = next();
+					if (c == ',') {
+						break;
+					}
+					if (c != '}' || !entered) {
+						throw unexpected(c);
+					}
+					handler.exitNode();
+					if (arrays == 0) {
+						return;
+					}
+					c = next();
+					if (c == ',') {
+						expect('{');
+						entered = false;
+						break;
+					}
+					if (c != ']') {
+						throw unexpected(c);
+					}
+					arrays--;
+				}
+			}
+		}
+
+		private String readString() throws IOException {
+			expect('"');
+			StringBuilder s = new StringBuilder();
+			while (true) {
+				int c = read();
+				if (c == '"') {
+					return s.toString();
+				}
+				if (c != '\\') {
+					s.append((char) c);
+					continue;
+				}
+				c = read();
+				switch (c) {
+				case 'b':
+					s.append('\b');
+					break;
+				case 'f':
+					s.append('\f');
+					break;
+				case 'n':
+					s.append('\n');
+					break;
+				case 'r':
+					s.append('\r');
+					break;
+				case 't':
+					s.append('\t');
+					break;
+				case 'u':
+					char[] hex = { (char) read(), (char) read(), (char) read(), (char) read() };
+					try {
+						s.append((char) Integer.parseInt(new String(hex), 16));
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid escape: \\u" + new String(hex), e);
+					}
+					break;
+				default:
+					s.append((char) c);
+				}
+			}
+		}
+
+		private void expect(char expected) throws IOException {
+			int c = next();
+			if (c != expected) {
+				throw unexpected(c);
+			}
+		}
+
+		/**
+		 * The next character, not consumed, skipping the whitespace.
+		 */
+		private int peek() throws IOException {
+			int c = next();
+			ahead = c;
+			return c;
+		}
+
+		/**
+		 * The next character skipping the whitespace.
+		 */
+		private int next() throws IOException {
+			int c;
+			do {
+				c = read();
+			} while (Character.isWhitespace(c));
+			return c;
+		}
+
+		private int read() throws IOException {
+			int c = ahead;
+			if (c != -2) {
+				ahead = -2;
+				return c;
+			}
+			c = in.read();
+			if (c < 0) {
+				throw new EOFException();
+			}
+			return c;
+		}
+
+		private static IOException unexpected(int c) {
+			return new IOException("Unexpected character: " + (char) c);
+		}
+
+	}
+
+}
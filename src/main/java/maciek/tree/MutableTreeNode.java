@@ -1,7 +1,12 @@
 package maciek.tree;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
+import maciek.tree.ImmutableTreeNode.Body;
+
 /**
  * A tree node implementation for tree which structure may be modified.
  */
@@ -14,6 +19,14 @@ public class MutableTreeNode<S extends TreeNodeSemantics<S>> extends AbstractTre
 		super(parent, children, semantics);
 	}
 
+	/**
+	 * The body this subtree was last mapped to by the {@link TreeNodeFactory.Incremental incremental} factory, null if
+	 * modified since.
+	 * <p>
+	 * Null for the ancestors of each node for which it is null.
+	 */
+	Body<S> mapped;
+
 	@Override
 	protected MutableTreeNode<S> getThis() {
 		return this;
@@ -26,55 +39,145 @@ public class MutableTreeNode<S extends TreeNodeSemantics<S>> extends AbstractTre
 	 * child index parameter is then ignored.
 	 */
 	public void setParent(MutableTreeNode<S> parent, int childIdx) {
-		if (parent == p && childIndex() == childIdx) {
-			return;
-		}
-		if (p != null) {
-			p.removeChild(childIndex());
-		}
 		if (parent == null) {
-			p = null;
-			depth = 0;
+			if (p != null) {
+				p.removeChild(childIndex());
+			}
 		} else {
-			p = parent;
-			depth = parent.depth() + 1;
-
-			p.addChild(this, childIdx);
+			parent.addChild(this, childIdx);
 		}
 	}
 
 	/**
 	 * Adds the child subtree at given index and sets this node as its parent.
+	 * <p>
+	 * The child is removed from its previous parent first.
 	 */
 	public void addChild(MutableTreeNode<S> child, int childIdx) {
-		if (ch.size() > childIdx && children().get(childIdx) == child) {
+		if (child.p == this && child.childIndex() == childIdx) {
 			return;
 		}
+		child.setParent(null, -1);
 		ch.add(childIdx, child);
+		modified();
 
-		child.setParent(this, childIdx);
+		attach(child, childIdx);
 	}
 
 	/**
 	 * Adds the last child subtree and sets this node as its parent.
+	 * <p>
+	 * The child is removed from its previous parent first.
 	 */
 	public void addChild(MutableTreeNode<S> child) {
+		child.setParent(null, -1);
 		ch.add(child);
+		modified();
 
-		child.setParent(this, ch.size() - 1);
+		attach(child, ch.size() - 1);
 	}
 
 	/**
 	 * Removes the child subtree from the tree.
 	 */
 	public void removeChild(int childIdx) {
-		MutableTreeNode<S> child = children().get(childIdx);
-		if (child == null) {
+		MutableTreeNode<S> child = ch.remove(childIdx);
+		modified();
+
+		child.p = null;
+		child.setDepth(0);
+		child.childIdx = -1;
+		validChildIdx = Math.min(validChildIdx, childIdx);
+	}
+
+	/**
+	 * Inserts the detached subtrees, each before the child at given index, merging them with the children in one pass.
+	 *
+	 * @param idx the indexes of the children before the insertion, ascending, the child count to append
+	 */
+	void insertChildren(int[] idx, List<MutableTreeNode<S>> children) {
+		List<MutableTreeNode<S>> merged = new ArrayList<>(ch.size() + children.size());
+		int j = 0;
+		for (int i = 0; i <= ch.size(); i++) {
+			while (j < idx.length && idx[j] == i) {
+				MutableTreeNode<S> child = children.get(j++);
+				child.p = this;
+				child.setDepth(depth + 1);
+				merged.add(child);
+			}
+			if (i < ch.size()) {
+				merged.add(ch.get(i));
+			}
+		}
+		ch.clear();
+		ch.addAll(merged);
+		modified();
+		validChildIdx = Math.min(validChildIdx, idx[0]);
+	}
+
+	/**
+	 * Marks this subtree and the ancestors subtrees modified, up to the first ancestor already marked.
+	 */
+	private void modified() {
+		for (MutableTreeNode<S> n = this; n != null && n.mapped != null; n = n.p) {
+			n.mapped = null;
+		}
+	}
+
+	/**
+	 * Remembers the bodies of the immutable subtree this subtree was mapped from, of the same structure, so the
+	 * subtrees not modified since are reused by the {@link TreeNodeFactory.Incremental incremental} factory.
+	 */
+	void mappedFrom(Body<S> body) {
+		Deque<MutableTreeNode<S>> nodes = new ArrayDeque<>();
+		Deque<Body<S>> bodies = new ArrayDeque<>();
+		nodes.push(this);
+		bodies.push(body);
+		while (!nodes.isEmpty()) {
+			MutableTreeNode<S> n = nodes.pop();
+			Body<S> b = bodies.pop();
+			n.mapped = b;
+			for (int i = 0; i < b.children.length; i++) {
+				nodes.push(n.ch.get(i));
+				bodies.push(b.children[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the depth of this node, shifting the depths of its descendants along.
+	 */
+	private void setDepth(int depth) {
+		int shift = depth - this.depth;
+		if (shift == 0) {
 			return;
 		}
-		ch.remove(childIdx);
+		Deque<MutableTreeNode<S>> nodes = new ArrayDeque<>();
+		nodes.push(this);
+		while (!nodes.isEmpty()) {
+			MutableTreeNode<S> n = nodes.pop();
+			n.depth += shift;
+			for (MutableTreeNode<S> child : n.ch) {
+				nodes.push(child);
+			}
+		}
+	}
 
-		child.setParent(null, -1);
+	/**
+	 * Sets this node as the parent of the child just inserted at given index.
+	 * <p>
+	 * Appending keeps the child indexes up to date, otherwise the following children are renumbered lazily.
+	 */
+	private void attach(MutableTreeNode<S> child, int childIdx) {
+		child.p = this;
+		child.setDepth(depth + 1);
+		child.childIdx = childIdx;
+
+		if (validChildIdx == childIdx && childIdx == ch.size() - 1) {
+			validChildIdx = ch.size();
+		} else {
+			validChildIdx = Math.min(validChildIdx, childIdx);
+		}
 	}
 
 }
@@ -0,0 +1,55 @@
+package maciek.tree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the tree node semantics for the tree serialization.
+ * <p>
+ * The binary formats use the binary encoding, the text formats use the text one, by default the Base64 of the
+ * binary encoding.
+ */
+public interface SemanticsCodec<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * Writes the semantics.
+	 */
+	void write(S semantics, DataOutput out) throws IOException;
+
+	/**
+	 * Reads the semantics written by {@link #write(TreeNodeSemantics, DataOutput)}.
+	 */
+	S read(DataInput in) throws IOException;
+
+	/**
+	 * The text encoding of the semantics.
+	 */
+	default String toText(S semantics) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			write(semantics, out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getEncoder().encodeToString(bytes.toByteArray());
+	}
+
+	/**
+	 * Decodes the semantics from the text written by {@link #toText(TreeNodeSemantics)}.
+	 */
+	default S fromText(String text) throws IOException {
+		try {
+			return read(new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(text))));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid semantics text: " + text, e);
+		}
+	}
+
+}
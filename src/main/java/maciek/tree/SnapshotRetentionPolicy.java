@@ -0,0 +1,135 @@
+package maciek.tree;
+
+import java.time.Duration;
+
+/**
+ * Decides which tree snapshots are retained in the {@link TreeSnapshots} history.
+ * <p>
+ * Applied each time a version is added. The versions are offered from the most recent to the oldest one, together
+ * with the statistics of the more recent versions retained so far. The most recent version is always retained and
+ * is not offered. A version not retained is evicted and never offered again.
+ */
+@FunctionalInterface
+public interface SnapshotRetentionPolicy {
+
+	/**
+	 * Whether the version is retained.
+	 */
+	boolean retains(Candidate candidate);
+
+	/**
+	 * Whether all the versions are retained, so the history needs not be walked when a version is added.
+	 */
+	default boolean retainsAll() {
+		return false;
+	}
+
+	/**
+	 * Retains the versions retained by both policies.
+	 */
+	default SnapshotRetentionPolicy and(SnapshotRetentionPolicy other) {
+		return c -> retains(c) && other.retains(c);
+	}
+
+	/**
+	 * Retains the versions retained by any of the policies.
+	 */
+	default SnapshotRetentionPolicy or(SnapshotRetentionPolicy other) {
+		return c -> retains(c) || other.retains(c);
+	}
+
+	/**
+	 * Retains all the versions.
+	 */
+	static SnapshotRetentionPolicy all() {
+		return new SnapshotRetentionPolicy() {
+
+			@Override
+			public boolean retains(Candidate candidate) {
+				return true;
+			}
+
+			@Override
+			public boolean retainsAll() {
+				return true;
+			}
+
+		};
+	}
+
+	/**
+	 * Retains given number of the most recent versions.
+	 */
+	static SnapshotRetentionPolicy keepLast(int count) {
+		return c -> c.retainedCount() < count;
+	}
+
+	/**
+	 * Retains the most recent versions as long as the total number of the nodes they keep is within the budget.
+	 * <p>
+	 * A version kept as a delta counts only the nodes referenced by the delta.
+	 */
+	static SnapshotRetentionPolicy nodeBudget(long maxNodes) {
+		return c -> c.retainedNodes() + c.nodes() <= maxNodes;
+	}
+
+	/**
+	 * Retains the versions taken within the time window.
+	 */
+	static SnapshotRetentionPolicy timeWindow(Duration window) {
+		long millis = window.toMillis();
+		return c -> c.ageMillis() <= millis;
+	}
+
+	/**
+	 * Retains about two versions per each range of 1, 2, 4, 8... versions ago, so the history of n versions keeps
+	 * about 2 log2(n) of them.
+	 * <p>
+	 * The version between 2^k and 2^(k+1) versions ago is retained if its sequence number is a multiple of 2^(k-1), so
+	 * the retained versions stay retained until they get old enough for the next range.
+	 */
+	static SnapshotRetentionPolicy exponential() {
+		return c -> {
+			int k = 63 - Long.numberOfLeadingZeros(c.versionsAgo());
+			return k == 0 || c.sequence() % (1L << (k - 1)) == 0;
+		};
+	}
+
+	/**
+	 * A version considered for retention.
+	 */
+	interface Candidate {
+
+		/**
+		 * The sequence number of the version in the tree lineage, 0 for the first one.
+		 */
+		long sequence();
+
+		/**
+		 * The number of versions taken after this one, including the evicted ones.
+		 */
+		long versionsAgo();
+
+		/**
+		 * The time elapsed since the version was taken, in milliseconds.
+		 */
+		long ageMillis();
+
+		/**
+		 * The number of nodes the version keeps.
+		 */
+		long nodes();
+
+		/**
+		 * The number of the more recent versions retained.
+		 */
+		int retainedCount();
+
+		/**
+		 * The number of nodes kept by the more recent versions retained.
+		 */
+		long retainedNodes();
+
+	}
+
+}
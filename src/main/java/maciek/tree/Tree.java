@@ -1,10 +1,16 @@
 package maciek.tree;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /**
  * A semantic tree.
@@ -37,7 +43,9 @@ public interface Tree<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S exten
 	/**
 	 * The tree nodes stream.
 	 */
-	TreeNodeStream<N, S> stream();
+	default TreeNodeStream<N, S> stream() {
+		return TreeNodeStream.of(root());
+	}
 
 	/**
 	 * The tree snapshots.
@@ -50,17 +58,47 @@ public interface Tree<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S exten
 	T copy();
 
 	/**
-	 * All the nodes of the tree.
+	 * All the nodes of the tree in pre-order.
 	 */
 	default List<N> nodes() {
-		return Stream.concat(Stream.of(root()), root().descendants().stream()).collect(Collectors.toList());
+		List<N> nodes = new ArrayList<>();
+		iterator().forEachRemaining(nodes::add);
+		return nodes;
 	}
 
 	/**
-	 * Iterator over the tree nodes.
+	 * Lazy iterator over the tree nodes in pre-order.
 	 */
 	default Iterator<N> iterator() {
-		return nodes().iterator();
+		return TreeTraversal.preOrder(root());
+	}
+
+	/**
+	 * Lazy spliterator over the tree nodes in pre-order, split on the subtree boundaries.
+	 */
+	default Spliterator<N> spliterator() {
+		return new TreeNodeSpliterator<>(root());
+	}
+
+	/**
+	 * The tree nodes lazily iterated in pre-order.
+	 */
+	default Iterable<N> preOrder() {
+		return root().preOrder();
+	}
+
+	/**
+	 * The tree nodes lazily iterated in post-order.
+	 */
+	default Iterable<N> postOrder() {
+		return root().postOrder();
+	}
+
+	/**
+	 * The tree nodes lazily iterated level by level.
+	 */
+	default Iterable<N> levelOrder() {
+		return root().levelOrder();
 	}
 
 	/**
@@ -97,9 +135,25 @@ public interface Tree<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S exten
 
 	/**
 	 * The map representation of the tree.
+	 * <p>
+	 * The paths are built along the walk, each sharing the path of the parent.
 	 */
 	default Map<AbsoluteTreePath, S> asMap() {
-		return nodes().stream().collect(Collectors.toMap(n -> n.absoluteTreePath(), n -> n.semantics()));
+		Map<AbsoluteTreePath, S> map = new HashMap<>();
+		Deque<N> nodes = new ArrayDeque<>();
+		Deque<AbsoluteTreePath> paths = new ArrayDeque<>();
+		nodes.push(root());
+		paths.push(AbsoluteTreePath.of());
+		while (!nodes.isEmpty()) {
+			N n = nodes.pop();
+			AbsoluteTreePath path = paths.pop();
+			map.put(path, n.semantics());
+			for (int i = n.childCount() - 1; i >= 0; i--) {
+				nodes.push(n.child(i));
+				paths.push(path.child(i));
+			}
+		}
+		return map;
 	}
 
 	/**
@@ -116,13 +170,13 @@ public interface Tree<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S exten
 	 */
 	default List<N> recentlyAdded(int snapshotsAgo) {
 
-		List<AbsoluteTreePath> prevPaths = treeSnapshots().all()
-				.stream()
-				.limit(snapshotsAgo)
+		TreeSnapshots<S> snapshots = treeSnapshots();
+
+		Set<AbsoluteTreePath> prevPaths = IntStream.range(0, Math.min(snapshotsAgo, snapshots.size()))
+				.mapToObj(snapshots::get)
 				.flatMap(t -> t.nodes().stream())
 				.map(TreeNode::absoluteTreePath)
-				.distinct()
-				.collect(Collectors.toList());
+				.collect(Collectors.toSet());
 
 		List<N> recentlyAdded = nodes()
 				.stream()
@@ -0,0 +1,128 @@
+package maciek.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The ancestry index of an immutable tree: lowest common ancestors, distances and level ancestors.
+ * <p>
+ * Built over the tree pre-order. The lowest common ancestor of two distinct nodes is the parent of the shallowest node
+ * in the pre-order range following the first of them up to the second one, found in constant time with a sparse table
+ * of the range minima. The pre-order is the Euler tour without the returns to the parents, so the table needs n
+ * rather than 2n entries per level. The k-th ancestor is the last node at its depth preceding the node in pre-order,
+ * found by binary search of the nodes at that depth.
+ * <p>
+ * Takes O(n log n) space and time to build. Immutable and thread safe once built.
+ */
+final class TreeAncestry<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * The tree nodes in pre-order.
+	 */
+	private final List<ImmutableTreeNode<S>> nodes;
+
+	/**
+	 * The parent index of each node, -1 for the root.
+	 */
+	private final int[] parent;
+
+	private final int[] depth;
+
+	/**
+	 * The index of the shallowest node in each range of 2^level nodes starting at the index, per level.
+	 */
+	private final int[][] shallowest;
+
+	/**
+	 * The indexes of the nodes at each depth, ascending.
+	 */
+	private final int[][] levels;
+
+	TreeAncestry(ImmutableTreeNode<S> root) {
+		this.nodes = root.preOrderNodes();
+		int n = nodes.size();
+
+		parent = new int[n];
+		depth = new int[n];
+		int[] levelSizes = new int[n];
+		parent[0] = -1;
+		levelSizes[0] = 1;
+		int maxDepth = 0;
+		for (int i = 1; i < n; i++) {
+			int p = nodes.get(i).parent().preOrderIndex();
+			parent[i] = p;
+			depth[i] = depth[p] + 1;
+			levelSizes[depth[i]]++;
+			maxDepth = Math.max(maxDepth, depth[i]);
+		}
+
+		levels = new int[maxDepth + 1][];
+		for (int d = 0; d <= maxDepth; d++) {
+			levels[d] = new int[levelSizes[d]];
+		}
+		Arrays.fill(levelSizes, 0);
+		for (int i = 0; i < n; i++) {
+			levels[depth[i]][levelSizes[depth[i]]++] = i;
+		}
+
+		shallowest = new int[32 - Integer.numberOfLeadingZeros(n)][];
+		shallowest[0] = new int[n];
+		Arrays.setAll(shallowest[0], i -> i);
+		for (int l = 1; l < shallowest.length; l++) {
+			int half = 1 << (l - 1);
+			int[] prev = shallowest[l - 1];
+			int[] cur = new int[n - (1 << l) + 1];
+			for (int i = 0; i < cur.length; i++) {
+				cur[i] = shallower(prev[i], prev[i + half]);
+			}
+			shallowest[l] = cur;
+		}
+	}
+
+	/**
+	 * The lowest common ancestor of the nodes, a node itself if it is an ancestor of the other one.
+	 */
+	ImmutableTreeNode<S> lca(ImmutableTreeNode<S> a, ImmutableTreeNode<S> b) {
+		return nodes.get(lca(a.preOrderIndex(), b.preOrderIndex()));
+	}
+
+	/**
+	 * The number of edges on the path between the nodes.
+	 */
+	int distance(ImmutableTreeNode<S> a, ImmutableTreeNode<S> b) {
+		int i = a.preOrderIndex();
+		int j = b.preOrderIndex();
+		return depth[i] + depth[j] - 2 * depth[lca(i, j)];
+	}
+
+	/**
+	 * The ancestor k levels above the node, the node itself for 0, null above the root.
+	 */
+	ImmutableTreeNode<S> kthAncestor(ImmutableTreeNode<S> node, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("Negative ancestor level: " + k);
+		}
+		int i = node.preOrderIndex();
+		if (k > depth[i]) {
+			return null;
+		}
+		int[] level = levels[depth[i] - k];
+		int pos = Arrays.binarySearch(level, i);
+		return nodes.get(level[pos >= 0 ? pos : -pos - 2]);
+	}
+
+	private int lca(int i, int j) {
+		if (i == j) {
+			return i;
+		}
+		int from = Math.min(i, j) + 1;
+		int to = Math.max(i, j);
+		int l = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+		return parent[shallower(shallowest[l][from], shallowest[l][to - (1 << l) + 1])];
+	}
+
+	private int shallower(int i, int j) {
+		return depth[j] < depth[i] ? j : i;
+	}
+
+}
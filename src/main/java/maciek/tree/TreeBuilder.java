@@ -1,5 +1,10 @@
 package maciek.tree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -19,11 +24,17 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * The tree mapper used internally by this builder.
 	 */
 	private final TreeMapper<MutableTree<S>, MutableTreeNode<S>, S> mapper = MutableTree.mapper();
+
+	/**
+	 * The mapper building the immutable trees, reusing the subtrees not modified since the previous build.
+	 */
+	private final TreeMapper<ImmutableTree<S>, ImmutableTreeNode<S>, S> immutableMapper = ImmutableTree
+			.mapper(new TreeNodeFactory.Incremental<S>());
 	
 	/**
-	 * The tree snapshots.
+	 * The tree snapshots, of the most recently built tree.
 	 */
-	private final TreeSnapshots<S> treeSnapshots;
+	private TreeSnapshots<S> treeSnapshots;
 	
 	/**
 	 * The tree being built by this builder.
@@ -33,7 +44,7 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	/**
 	 * The current tree location where the tree changes are applied.
 	 */
-	private TreeCursor<S> cursor;
+	private TreeCursor<MutableTreeNode<S>, S> cursor;
 
 	/**
 	 * Creates the builder with empty tree structure.
@@ -47,31 +58,112 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	/**
 	 * Creates the builder containing the tree structure.
 	 */
+	@SuppressWarnings("unchecked")
 	TreeBuilder(Tree<?, ?, S> tree) {
-		cursor = new TreeCursor<>(mapper.map(tree).root());
+		treeUnderConstruction = mapper.map(tree);
+		cursor = new TreeCursor<>(treeUnderConstruction);
 		treeSnapshots = tree.treeSnapshots();
+		if (tree instanceof ImmutableTree) {
+			// the first build reuses the subtrees of the source not modified
+			treeUnderConstruction.root().mappedFrom(((ImmutableTree<S>) tree).root().body());
+		}
 	}
 
 	/**
 	 * Creates a root of the tree.
 	 */
 	public TreeBuilder<S> root(S semantics) {
-		cursor = new TreeCursor<>(nF.createNode(semantics));
+		treeUnderConstruction = new MutableTree<>(nF.createNode(semantics), TreeSnapshots.empty());
+		cursor = new TreeCursor<>(treeUnderConstruction);
 		return this;
 	}
-	
+
+	/**
+	 * Creates a new node at given tree location, if the location parent exists.
+	 * <p>
+	 * The location path indicates the new node parent and its child index, shifting the child at the index and the
+	 * following ones. The cursor is not moved.
+	 */
+	public TreeBuilder<S> addNode(TreeLocation<S> location, S semantics) {
+		return addNodes(List.of(Insertion.of(location, semantics)));
+	}
+
+	/**
+	 * Adds the tree at given tree location, if the location parent exists.
+	 * <p>
+	 * The location path indicates the added tree parent and its child index, shifting the child at the index and the
+	 * following ones. The cursor is not moved.
+	 */
+	public TreeBuilder<S> addNode(TreeLocation<S> location, ImmutableTree<S> tree) {
+		return addNodes(List.of(Insertion.of(location, tree)));
+	}
+
 	/**
-	 * Adds tree node to giventree location, if location exists.
+	 * Adds the nodes at the tree locations, the locations which parents don't exist skipped.
+	 * <p>
+	 * The locations past the last child of their parents are skipped too. The index equal to the child count of the
+	 * parent, before any node is added, appends the node as its last child.
+	 * <p>
+	 * All the locations are resolved against the tree before any node is added, so the indexes shifted by the added
+	 * nodes don't affect the other locations. The nodes at the same location are added in the given order. The
+	 * insertions are sorted by the location path and the nodes added to each parent at once, merged with its children
+	 * in one pass. The cursor is not moved.
 	 */
-	public TreeBuilder<S> addNode(TreeLocation<S> location) {
-		return null;
+	public TreeBuilder<S> addNodes(Collection<Insertion<S>> insertions) {
+
+		List<Insertion<S>> resolved = new ArrayList<>(insertions.size());
+		for (Insertion<S> insertion : insertions) {
+			AbsoluteTreePath path = insertion.location.get(treeUnderConstruction);
+			if (path != null && path.length() > 0) {
+				int[] idx = path.toArray();
+				resolved.add(new Insertion<>(insertion, path.parent(), idx[idx.length - 1]));
+			}
+		}
+		// by the parent, then by the index, stable to keep the given order of the nodes at the same location
+		resolved.sort(Comparator.<Insertion<S>, AbsoluteTreePath> comparing(in -> in.parent)
+				.thenComparingInt(in -> in.childIdx));
+
+		// the parents are resolved before they are changed
+		List<MutableTreeNode<S>> parents = new ArrayList<>();
+		for (int i = 0; i < resolved.size(); i++) {
+			if (i == 0 || !resolved.get(i).parent.equals(resolved.get(i - 1).parent)) {
+				parents.add(treeUnderConstruction.node(resolved.get(i).parent));
+			}
+		}
+
+		int from = 0;
+		for (MutableTreeNode<S> parent : parents) {
+			int to = from + 1;
+			while (to < resolved.size() && resolved.get(to).parent.equals(resolved.get(from).parent)) {
+				to++;
+			}
+			if (parent != null) {
+				int count = parent.childCount();
+				int[] idx = new int[to - from];
+				List<MutableTreeNode<S>> children = new ArrayList<>(to - from);
+				int n = 0;
+				for (Insertion<S> insertion : resolved.subList(from, to)) {
+					// the location past the last child doesn't exist
+					if (insertion.childIdx <= count) {
+						idx[n++] = insertion.childIdx;
+						children.add(insertion.subtree != null ? mapper.map(insertion.subtree).root()
+								: nF.createNode(insertion.semantics));
+					}
+				}
+				if (n > 0) {
+					parent.insertChildren(Arrays.copyOf(idx, n), children);
+				}
+			}
+			from = to;
+		}
+		return this;
 	}
 
 	/**
 	 * Creates a new node as a current node's last child.
 	 */
 	public TreeBuilder<S> addChild(S semantics) {
-		cursor.get().parent().addChild(nF.createNode(semantics));
+		current().addChild(nF.createNode(semantics));
 		return this;
 	}
 
@@ -79,7 +171,7 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * Creates a new node as a current node's child at given index.
 	 */
 	public TreeBuilder<S> addChild(S semantics, int idx) {
-		cursor.get().parent().addChild(nF.createNode(semantics), idx);
+		current().addChild(nF.createNode(semantics), idx);
 		return this;
 	}
 
@@ -87,7 +179,7 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * Adds the tree as a current node's last child.
 	 */
 	public TreeBuilder<S> addChild(ImmutableTree<S> tree) {
-		cursor.get().parent().addChild(mapper.map(tree).root());
+		current().addChild(mapper.map(tree).root());
 		return this;
 	}
 
@@ -95,23 +187,31 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * Adds the tree as a current node's child at given index.
 	 */
 	public TreeBuilder<S> addChild(ImmutableTree<S> tree, int idx) {
-		cursor.get().parent().addChild(mapper.map(tree).root(), idx);
+		current().addChild(mapper.map(tree).root(), idx);
 		return this;
 	}
 
 	/**
-	 * Adds the tree as a current node's child at given index.
+	 * Creates a new node as the current node left sibling.
+	 * <p>
+	 * The cursor follows the current node.
 	 */
 	public TreeBuilder<S> addLeftSibling(S semantics) {
-		cursor.get().parent().addChild(nF.createNode(semantics), cursor.get().childIndex());
+		MutableTreeNode<S> current = current();
+		current.parent().addChild(nF.createNode(semantics), current.childIndex());
+		cursor.right();
 		return this;
 	}
 
 	/**
 	 * Adds the tree as the current node left sibling.
+	 * <p>
+	 * The cursor follows the current node.
 	 */
 	public TreeBuilder<S> addLeftSibling(ImmutableTree<S> tree) {
-		cursor.get().parent().addChild(mapper.map(tree).root(), cursor.get().childIndex());
+		MutableTreeNode<S> current = current();
+		current.parent().addChild(mapper.map(tree).root(), current.childIndex());
+		cursor.right();
 		return this;
 	}
 
@@ -119,7 +219,8 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * Creates a new node as the current node right sibling.
 	 */
 	public TreeBuilder<S> addRightSibling(S semantics) {
-		cursor.get().parent().addChild(nF.createNode(semantics), cursor.get().childIndex() + 1);
+		MutableTreeNode<S> current = current();
+		current.parent().addChild(nF.createNode(semantics), current.childIndex() + 1);
 		return this;
 	}
 
@@ -127,7 +228,8 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * Adds the tree as the current node right sibling.
 	 */
 	public TreeBuilder<S> addRightSibling(ImmutableTree<S> tree) {
-		cursor.get().parent().addChild(mapper.map(tree).root(), cursor.get().childIndex() + 1);
+		MutableTreeNode<S> current = current();
+		current.parent().addChild(mapper.map(tree).root(), current.childIndex() + 1);
 		return this;
 	}
 
@@ -137,20 +239,30 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	 * Moves the cursor to the removed subtree previous parent.
 	 */
 	public TreeBuilder<S> removeSubtree() {
+		MutableTreeNode<S> current = current();
 		moveCursor(c -> c.parent());
-		cursor.getPrev().setParent(null, -1);
+		current.setParent(null, -1);
 		return this;
 	}
 
 	/**
 	 * Inserts a node between current node and its parent.
+	 * <p>
+	 * The cursor follows the current node.
 	 */
 	public TreeBuilder<S> insertParent(S semantics) {
-		var prevP = cursor.get().parent();
-		var p = nF.createNode(semantics);
+		MutableTreeNode<S> current = current();
+		MutableTreeNode<S> prevP = current.parent();
+		MutableTreeNode<S> p = nF.createNode(semantics);
 
-		p.addChild(cursor.get());
-		prevP.addChild(p);
+		if (prevP == null) {
+			p.addChild(current);
+			treeUnderConstruction.setRoot(p);
+		} else {
+			prevP.addChild(p, current.childIndex());
+			p.addChild(current);
+		}
+		cursor.child(0);
 
 		return this;
 	}
@@ -165,9 +277,12 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 
 	/**
 	 * Builds the immutable tree.
+	 * <p>
+	 * Only the paths modified since the previous build are mapped, the rest of the tree is shared with the previously
+	 * built tree, or with the immutable tree this builder was created of.
 	 */
 	public ImmutableTree<S> build() {
-		return build(ImmutableTree.mapper());
+		return build(immutableMapper);
 	}
 
 	/**
@@ -180,13 +295,75 @@ public class TreeBuilder<S extends TreeNodeSemantics<S>> {
 	/**
 	 * Build the tree.
 	 * <p>
-	 * Takes the snapshot of the build tree.
+	 * Takes the snapshot of the build tree, following the snapshot of the previously built tree.
 	 * 
 	 * @param <T> build tree type
 	 * @param <N> build node type
 	 */
 	public <T2 extends Tree<T2, N2, S>, N2 extends TreeNode<N2, S>> T2 build(TreeMapper<T2, N2, S> mapper) {
-		return mapper.map(cursor.get().root(), treeSnapshots);
+		T2 built = mapper.map(treeUnderConstruction.root(), treeSnapshots);
+		treeSnapshots = built.treeSnapshots();
+		return built;
+	}
+
+	/**
+	 * The node at the cursor.
+	 */
+	private MutableTreeNode<S> current() {
+		return treeUnderConstruction.node(cursor.get(treeUnderConstruction));
+	}
+
+	/**
+	 * A node or a tree to be added at the tree location.
+	 */
+	public static final class Insertion<S extends TreeNodeSemantics<S>> {
+
+		private final TreeLocation<S> location;
+
+		private final S semantics;
+
+		private final ImmutableTree<S> subtree;
+
+		/**
+		 * The resolved location parent and child index.
+		 */
+		private final AbsoluteTreePath parent;
+
+		private final int childIdx;
+
+		private Insertion(TreeLocation<S> location, S semantics, ImmutableTree<S> subtree) {
+			this.location = location;
+			this.semantics = semantics;
+			this.subtree = subtree;
+			this.parent = null;
+			this.childIdx = -1;
+		}
+
+		/**
+		 * The insertion resolved to the location.
+		 */
+		private Insertion(Insertion<S> insertion, AbsoluteTreePath parent, int childIdx) {
+			this.location = insertion.location;
+			this.semantics = insertion.semantics;
+			this.subtree = insertion.subtree;
+			this.parent = parent;
+			this.childIdx = childIdx;
+		}
+
+		/**
+		 * The new node with given semantics at the location.
+		 */
+		public static <S extends TreeNodeSemantics<S>> Insertion<S> of(TreeLocation<S> location, S semantics) {
+			return new Insertion<>(location, semantics, null);
+		}
+
+		/**
+		 * The tree at the location.
+		 */
+		public static <S extends TreeNodeSemantics<S>> Insertion<S> of(TreeLocation<S> location, ImmutableTree<S> tree) {
+			return new Insertion<>(location, null, tree);
+		}
+
 	}
 
 }
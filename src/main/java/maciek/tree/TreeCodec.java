@@ -0,0 +1,91 @@
+package maciek.tree;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ServiceLoader;
+
+/**
+ * The streaming tree serialization format.
+ * <p>
+ * Encodes and decodes the tree node events, so the trees of any size are serialized with the memory proportional to
+ * their depth. The node semantics are encoded with the {@link SemanticsCodec}.
+ * <p>
+ * The {@link #binary()} and {@link #json()} formats are built in, other formats are found by {@link #forName(String)}
+ * among the {@link ServiceLoader} provided implementations.
+ */
+public interface TreeCodec {
+
+	/**
+	 * The format name.
+	 */
+	String name();
+
+	/**
+	 * The handler encoding the node events to the stream.
+	 * <p>
+	 * The output is flushed once the root is exited, the stream is not closed.
+	 */
+	<S extends TreeNodeSemantics<S>> TreeEventHandler<S> encoder(OutputStream out, SemanticsCodec<S> codec);
+
+	/**
+	 * Decodes a tree from the stream, emitting its node events to the handler.
+	 * <p>
+	 * The stream is not closed.
+	 */
+	<S extends TreeNodeSemantics<S>> void decode(InputStream in, SemanticsCodec<S> codec, TreeEventHandler<S> handler)
+			throws IOException;
+
+	/**
+	 * Encodes the tree to the stream.
+	 */
+	default <S extends TreeNodeSemantics<S>> void encode(Tree<?, ?, S> tree, SemanticsCodec<S> codec, OutputStream out)
+			throws IOException {
+		TreeEventHandler.traverse(tree.root(), encoder(out, codec));
+	}
+
+	/**
+	 * Decodes the tree from the stream with the mapper.
+	 */
+	default <T extends Tree<T, N, S>, N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> T decode(InputStream in,
+			SemanticsCodec<S> codec, TreeMapper<T, N, S> mapper) throws IOException {
+		TreeMapper<T, N, S>.Assembler assembler = mapper.assembler();
+		decode(in, codec, assembler);
+		return assembler.tree();
+	}
+
+	/**
+	 * The compact binary format, the node events encoded as varints.
+	 */
+	static TreeCodec binary() {
+		return BinaryTreeCodec.INSTANCE;
+	}
+
+	/**
+	 * The JSON format, each node being an object with the semantics text and the children array.
+	 */
+	static TreeCodec json() {
+		return JsonTreeCodec.INSTANCE;
+	}
+
+	/**
+	 * The format of given name, either built in or provided.
+	 * 
+	 * @throws IllegalArgumentException if there is no such format
+	 */
+	static TreeCodec forName(String name) {
+		if (binary().name().equals(name)) {
+			return binary();
+		}
+		if (json().name().equals(name)) {
+			return json();
+		}
+		for (TreeCodec codec : ServiceLoader.load(TreeCodec.class)) {
+			if (codec.name().equals(name)) {
+				return codec;
+			}
+		}
+		throw new IllegalArgumentException("No tree codec: " + name);
+	}
+
+}
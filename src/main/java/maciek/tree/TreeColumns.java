@@ -0,0 +1,360 @@
+package maciek.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * The tree structure stored in primitive columns, the nodes numbered in pre-order.
+ * <p>
+ * Each node is an index. The columns hold the parent index, the depth, the subtree size and the child index of each
+ * node, as well as the children indexes of each node. The descendants of a node are the nodes following it within
+ * its subtree size, so the first child is the next node and the next sibling follows the node subtree. The columns
+ * are kept either on the heap or off-heap, in direct buffers.
+ * <p>
+ * The columns are appended in pre-order and sealed once the root is completed, or created sealed from existing
+ * buffers, such as the ones mapped from a {@link TreeFile}. Not thread safe until sealed.
+ */
+final class TreeColumns<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * The initial capacity of the columns.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Whether the columns are kept in direct buffers.
+	 */
+	private final boolean offHeap;
+
+	private IntBuffer parent;
+
+	private IntBuffer depth;
+
+	private IntBuffer subtreeSize;
+
+	private IntBuffer childIndex;
+
+	/**
+	 * The number of children while appended, the offsets of the children in {@link #children} once sealed, one more
+	 * than the nodes.
+	 */
+	private IntBuffer childOffset;
+
+	/**
+	 * The children of the nodes, in node order, null until sealed.
+	 */
+	private IntBuffer children;
+
+	/**
+	 * The semantics of the appended nodes, null if decoded on access or not kept.
+	 */
+	private Object[] semantics;
+
+	/**
+	 * The semantics decoded on access, null if kept.
+	 */
+	private final IntFunction<S> decoder;
+
+	/**
+	 * The number of nodes.
+	 */
+	private int size;
+
+	/**
+	 * The capacity of the appended columns.
+	 */
+	private int capacity;
+
+	/**
+	 * The nodes not completed yet, the last created one on top.
+	 */
+	private int[] open = new int[16];
+
+	private int openCount;
+
+	/**
+	 * Creates empty columns to be appended.
+	 *
+	 * @param offHeap whether the columns are kept in direct buffers
+	 * @param keepSemantics whether the semantics are kept, or only the structure
+	 */
+	TreeColumns(boolean offHeap, boolean keepSemantics) {
+		this.offHeap = offHeap;
+		capacity = INITIAL_CAPACITY;
+		parent = allocate(capacity);
+		depth = allocate(capacity);
+		subtreeSize = allocate(capacity);
+		childIndex = allocate(capacity);
+		childOffset = allocate(capacity);
+		semantics = keepSemantics ? new Object[capacity] : null;
+		decoder = keepSemantics ? null : idx -> null;
+	}
+
+	/**
+	 * Creates sealed columns.
+	 *
+	 * @param columns the columns in the order of {@link #columns()}
+	 * @param decoder the semantics of the node at index
+	 */
+	TreeColumns(int size, IntBuffer[] columns, IntFunction<S> decoder) {
+		this.offHeap = columns[0].isDirect();
+		this.size = size;
+		this.parent = columns[0];
+		this.depth = columns[1];
+		this.subtreeSize = columns[2];
+		this.childIndex = columns[3];
+		this.childOffset = columns[4];
+		this.children = columns[5];
+		this.decoder = decoder;
+		this.open = null;
+	}
+
+	// appending
+
+	/**
+	 * Appends the node as the last child of the parent.
+	 * <p>
+	 * The parent must be the last created node not completed yet, so the nodes are appended in pre-order.
+	 *
+	 * @param parentIdx the parent index, -1 for the root
+	 * @return the node index
+	 */
+	int add(int parentIdx, S semantics) {
+		if (parentIdx != (openCount == 0 ? -1 : open[openCount - 1]) || (parentIdx < 0 && size > 0)) {
+			throw new IllegalStateException("The columnar tree nodes must be created in pre-order");
+		}
+		if (size == capacity) {
+			grow();
+		}
+
+		int idx = size++;
+		parent.put(idx, parentIdx);
+		if (parentIdx >= 0) {
+			depth.put(idx, depth.get(parentIdx) + 1);
+			int count = childOffset.get(parentIdx);
+			childIndex.put(idx, count);
+			childOffset.put(parentIdx, count + 1);
+		} else {
+			depth.put(idx, 0);
+			childIndex.put(idx, -1);
+		}
+		childOffset.put(idx, 0);
+		if (this.semantics != null) {
+			this.semantics[idx] = semantics;
+		}
+
+		if (openCount == open.length) {
+			open = Arrays.copyOf(open, openCount * 2);
+		}
+		open[openCount++] = idx;
+		return idx;
+	}
+
+	/**
+	 * Sets the node semantics.
+	 */
+	void setSemantics(int idx, S semantics) {
+		this.semantics[idx] = semantics;
+	}
+
+	/**
+	 * Completes the node once all its descendants are appended, sealing the columns when the root is completed.
+	 */
+	void complete(int idx) {
+		if (openCount == 0 || open[openCount - 1] != idx) {
+			throw new IllegalStateException("The columnar tree nodes must be completed children first");
+		}
+		--openCount;
+		subtreeSize.put(idx, size - idx);
+		if (openCount == 0) {
+			seal();
+		}
+	}
+
+	/**
+	 * Trims the columns and indexes the children.
+	 */
+	private void seal() {
+		parent = copy(parent, size);
+		depth = copy(depth, size);
+		subtreeSize = copy(subtreeSize, size);
+		childIndex = copy(childIndex, size);
+		if (semantics != null) {
+			semantics = Arrays.copyOf(semantics, size);
+		}
+
+		IntBuffer counts = childOffset;
+		childOffset = allocate(size + 1);
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			childOffset.put(i, offset);
+			offset += counts.get(i);
+		}
+		childOffset.put(size, offset);
+
+		children = allocate(Math.max(offset, 1));
+		for (int i = 1; i < size; i++) {
+			children.put(childOffset.get(parent.get(i)) + childIndex.get(i), i);
+		}
+		open = null;
+	}
+
+	private void grow() {
+		capacity = size * 2;
+		parent = copy(parent, capacity);
+		depth = copy(depth, capacity);
+		subtreeSize = copy(subtreeSize, capacity);
+		childIndex = copy(childIndex, capacity);
+		childOffset = copy(childOffset, capacity);
+		if (semantics != null) {
+			semantics = Arrays.copyOf(semantics, capacity);
+		}
+	}
+
+	/**
+	 * Copies the first {@link #size} values to a new column of given capacity.
+	 */
+	private IntBuffer copy(IntBuffer column, int capacity) {
+		IntBuffer copy = allocate(capacity);
+		IntBuffer src = column.duplicate();
+		src.position(0).limit(size);
+		copy.put(src);
+		copy.clear();
+		return copy;
+	}
+
+	private IntBuffer allocate(int capacity) {
+		if (offHeap) {
+			return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return IntBuffer.allocate(capacity);
+	}
+
+	// reading
+
+	/**
+	 * The number of nodes.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * The parent index, -1 for the root.
+	 */
+	int parent(int idx) {
+		return parent.get(idx);
+	}
+
+	int depth(int idx) {
+		return depth.get(idx);
+	}
+
+	/**
+	 * The number of nodes in the node subtree, the node included.
+	 */
+	int subtreeSize(int idx) {
+		return subtreeSize.get(idx);
+	}
+
+	/**
+	 * The node index in the parent children, -1 for the root.
+	 */
+	int childIndex(int idx) {
+		return childIndex.get(idx);
+	}
+
+	int childCount(int idx) {
+		return childOffset.get(idx + 1) - childOffset.get(idx);
+	}
+
+	/**
+	 * The child at given index of the node children.
+	 */
+	int child(int idx, int childIdx) {
+		return children.get(childOffset.get(idx) + childIdx);
+	}
+
+	/**
+	 * The first child index, -1 for a leaf.
+	 */
+	int firstChild(int idx) {
+		return subtreeSize.get(idx) > 1 ? idx + 1 : -1;
+	}
+
+	/**
+	 * The next sibling index, -1 for the last child.
+	 */
+	int nextSibling(int idx) {
+		int p = parent.get(idx);
+		if (p < 0) {
+			return -1;
+		}
+		int next = idx + subtreeSize.get(idx);
+		return next < p + subtreeSize.get(p) ? next : -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	S semantics(int idx) {
+		return semantics != null ? (S) semantics[idx] : decoder.apply(idx);
+	}
+
+	/**
+	 * The sealed columns: parent, depth, subtree size and child index of each node, the children offsets of each node
+	 * followed by the children count, and the children of all the nodes, at least one entry.
+	 */
+	IntBuffer[] columns() {
+		return new IntBuffer[] { parent.duplicate(), depth.duplicate(), subtreeSize.duplicate(), childIndex.duplicate(),
+				childOffset.duplicate(), children.duplicate() };
+	}
+
+	/**
+	 * The node flyweight.
+	 */
+	ColumnarTreeNode<S> node(int idx) {
+		return new ColumnarTreeNode<>(this, idx);
+	}
+
+	/**
+	 * The nodes in the index range, created on access.
+	 */
+	List<ColumnarTreeNode<S>> nodes(int from, int to) {
+		return new Nodes(from, to);
+	}
+
+	/**
+	 * The node flyweights of an index range.
+	 */
+	private final class Nodes extends AbstractList<ColumnarTreeNode<S>> implements RandomAccess {
+
+		private final int from;
+
+		private final int to;
+
+		Nodes(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public ColumnarTreeNode<S> get(int idx) {
+			if (idx < 0 || idx >= to - from) {
+				throw new IndexOutOfBoundsException(idx);
+			}
+			return node(from + idx);
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+	}
+
+}
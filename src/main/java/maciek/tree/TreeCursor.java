@@ -24,6 +24,14 @@ public class TreeCursor<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>
 	 */
 	private AbsoluteTreePath currentLoc;
 
+	/**
+	 * Creates the cursor indicating the tree root.
+	 */
+	public TreeCursor(Tree<?, N, S> tree) {
+		this.tree = tree;
+		this.currentLoc = AbsoluteTreePath.of();
+	}
+
 	/**
 	 * Do something with the current node if the node at the current location exists.
 	 */
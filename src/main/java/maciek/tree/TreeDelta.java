@@ -0,0 +1,188 @@
+package maciek.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+import maciek.tree.ImmutableTreeNode.Body;
+
+/**
+ * Structural difference between two immutable tree versions.
+ * <p>
+ * Consists of the operations keyed by the absolute tree path which turn the source version into the target one:
+ * semantics changes, subtree insertions and removals. The operations keep references only to the target subtrees
+ * and semantics missing in the source version.
+ */
+class TreeDelta<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * The operations in the order of application.
+	 */
+	private final List<Operation<S>> operations;
+
+	/**
+	 * The number of target nodes referenced by the operations.
+	 */
+	private final long nodeCount;
+
+	private TreeDelta(List<Operation<S>> operations) {
+		this.operations = operations;
+		long count = 0;
+		for (Operation<S> op : operations) {
+			count += op.subtree == null ? 1 : op.subtree.size();
+		}
+		this.nodeCount = count;
+	}
+
+	/**
+	 * Computes the delta turning the source into the target.
+	 */
+	static <S extends TreeNodeSemantics<S>> TreeDelta<S> between(Body<S> source, Body<S> target) {
+
+		List<Operation<S>> operations = new ArrayList<>();
+
+		Deque<Object[]> pending = new ArrayDeque<>();
+		pending.push(new Object[] { source, target, AbsoluteTreePath.of() });
+
+		while (!pending.isEmpty()) {
+			Object[] cmp = pending.pop();
+			@SuppressWarnings("unchecked")
+			Body<S> a = (Body<S>) cmp[0];
+			@SuppressWarnings("unchecked")
+			Body<S> b = (Body<S>) cmp[1];
+			AbsoluteTreePath path = (AbsoluteTreePath) cmp[2];
+
+			if (a == b) {
+				continue;
+			}
+			if (!Objects.equals(a.semantics, b.semantics)) {
+				operations.add(new Operation<>(Operation.SEMANTICS, path, -1, b.semantics, null));
+			}
+
+			int na = a.children.length;
+			int nb = b.children.length;
+
+			if (na == nb) {
+				for (int i = na - 1; i >= 0; i--) {
+					pending.push(new Object[] { a.children[i], b.children[i], path.child(i) });
+				}
+				continue;
+			}
+
+			// the children differ in the middle, the equal prefix and suffix are kept
+			int prefix = 0;
+			while (prefix < na && prefix < nb && a.children[prefix].sameAs(b.children[prefix])) {
+				prefix++;
+			}
+			int suffix = 0;
+			while (suffix < na - prefix && suffix < nb - prefix
+					&& a.children[na - 1 - suffix].sameAs(b.children[nb - 1 - suffix])) {
+				suffix++;
+			}
+			for (int i = prefix; i < na - suffix; i++) {
+				operations.add(new Operation<>(Operation.REMOVE, path, prefix, null, null));
+			}
+			for (int i = prefix; i < nb - suffix; i++) {
+				operations.add(new Operation<>(Operation.INSERT, path, i, null, b.children[i]));
+			}
+		}
+
+		return new TreeDelta<>(operations);
+	}
+
+	/**
+	 * Applies the delta to the source version.
+	 *
+	 * @return the target version
+	 */
+	Body<S> apply(Body<S> source) {
+		Body<S> b = source;
+		for (Operation<S> op : operations) {
+			b = op.apply(b);
+		}
+		return b;
+	}
+
+	/**
+	 * The number of target nodes referenced by the delta.
+	 */
+	long nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * A delta operation at the node indicated by the path.
+	 */
+	private static final class Operation<S extends TreeNodeSemantics<S>> {
+
+		/**
+		 * Sets the node semantics.
+		 */
+		static final int SEMANTICS = 0;
+
+		/**
+		 * Inserts the subtree as the node child at index.
+		 */
+		static final int INSERT = 1;
+
+		/**
+		 * Removes the node child at index.
+		 */
+		static final int REMOVE = 2;
+
+		final int type;
+
+		final AbsoluteTreePath path;
+
+		final int childIdx;
+
+		final S semantics;
+
+		final Body<S> subtree;
+
+		Operation(int type, AbsoluteTreePath path, int childIdx, S semantics, Body<S> subtree) {
+			this.type = type;
+			this.path = path;
+			this.childIdx = childIdx;
+			this.semantics = semantics;
+			this.subtree = subtree;
+		}
+
+		/**
+		 * Applies the operation, copying the path spine.
+		 */
+		Body<S> apply(Body<S> root) {
+
+			int[] idx = path.toArray();
+
+			@SuppressWarnings("unchecked")
+			Body<S>[] spine = new Body[idx.length + 1];
+			spine[0] = root;
+			for (int i = 0; i < idx.length; i++) {
+				spine[i + 1] = spine[i].children[idx[i]];
+			}
+
+			Body<S> node = spine[idx.length];
+			Body<S> b;
+			switch (type) {
+			case SEMANTICS:
+				b = node.withSemantics(semantics);
+				break;
+			case INSERT:
+				b = node.withChildInserted(childIdx, subtree);
+				break;
+			default:
+				b = node.withChildRemoved(childIdx);
+			}
+
+			for (int i = idx.length - 1; i >= 0; i--) {
+				b = spine[i].withChild(idx[i], b);
+			}
+			return b;
+		}
+
+	}
+
+}
@@ -0,0 +1,60 @@
+package maciek.tree;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Handles the tree as a stream of node events.
+ * <p>
+ * Each node is entered with its semantics, then its children are handled and the node is exited, so the nodes are
+ * entered in pre-order and exited in post-order. Enables streaming the trees of any size with the memory
+ * proportional to the depth.
+ */
+public interface TreeEventHandler<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * Enters the node, the child of the entered node not exited yet.
+	 */
+	void enterNode(S semantics) throws IOException;
+
+	/**
+	 * Exits the last entered node not exited yet.
+	 */
+	void exitNode() throws IOException;
+
+	/**
+	 * Emits the subtree events to the handler.
+	 */
+	static <S extends TreeNodeSemantics<S>> void traverse(TreeNode<?, S> subtreeRoot, TreeEventHandler<S> handler)
+			throws IOException {
+
+		// the path from the root to the current node, the nodes and their next child indexes
+		TreeNode<?, ?>[] nodes = new TreeNode[16];
+		int[] next = new int[16];
+
+		nodes[0] = subtreeRoot;
+		handler.enterNode(subtreeRoot.semantics());
+		int depth = 1;
+
+		while (depth > 0) {
+			@SuppressWarnings("unchecked")
+			TreeNode<?, S> n = (TreeNode<?, S>) nodes[depth - 1];
+			int i = next[depth - 1]++;
+			if (i < n.childCount()) {
+				TreeNode<?, S> child = n.child(i);
+				if (depth == nodes.length) {
+					nodes = Arrays.copyOf(nodes, depth * 2);
+					next = Arrays.copyOf(next, depth * 2);
+				}
+				nodes[depth] = child;
+				next[depth] = 0;
+				depth++;
+				handler.enterNode(child.semantics());
+			} else {
+				nodes[--depth] = null;
+				handler.exitNode();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package maciek.tree;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The binary tree file format, opened by memory mapping.
+ * <p>
+ * The file holds the {@link ColumnarTree} columns, in big-endian order:
+ * <ul>
+ * <li>the header: magic, version, number of nodes, maximal semantics record length and semantics section length,
+ * <li>the int columns: parent, depth, subtree size and child index of each node, children offsets of each node
+ * followed by the children count, the children of all the nodes,
+ * <li>the long offsets of each node semantics record followed by the semantics section length, aligned to 8 bytes,
+ * <li>the semantics records written by the {@link SemanticsCodec}, in pre-order.
+ * </ul>
+ * The opened tree reads the mapped columns directly and decodes the semantics on access, so opening costs only the
+ * mapping and the pages are loaded as the tree is queried.
+ */
+public final class TreeFile {
+
+	private static final int MAGIC = 0x54524545;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 32;
+
+	/**
+	 * The size of the semantics section chunks mapped separately, the records may extend past the chunk end.
+	 */
+	private static final long CHUNK_BYTES = 1L << 30;
+
+	/**
+	 * Utility class.
+	 */
+	private TreeFile() {
+	}
+
+	/**
+	 * Writes the tree in one pass.
+	 * <p>
+	 * The semantics are written to a temporary file while the structure is collected off-heap.
+	 */
+	public static <S extends TreeNodeSemantics<S>> void write(Tree<?, ?, S> tree, SemanticsCodec<S> codec, Path file)
+			throws IOException {
+		write(tree.root(), codec, file);
+	}
+
+	/**
+	 * Writes the subtree in one pass.
+	 * <p>
+	 * The semantics are written to a temporary file while the structure is collected off-heap.
+	 */
+	public static <S extends TreeNodeSemantics<S>> void write(TreeNode<?, S> subtreeRoot, SemanticsCodec<S> codec,
+			Path file) throws IOException {
+
+		Path dir = file.toAbsolutePath().getParent();
+		Path records = Files.createTempFile(dir, "records", ".tmp");
+		Path offsets = Files.createTempFile(dir, "offsets", ".tmp");
+		try {
+			TreeColumns<S> columns = new TreeColumns<>(true, false);
+			RecordWriter<S> writer = new RecordWriter<>(codec, records, offsets);
+
+			try (writer) {
+				TreeEventHandler.traverse(subtreeRoot, new TreeEventHandler<S>() {
+
+					/**
+					 * The indexes of the entered nodes not exited yet.
+					 */
+					private int[] idx = new int[16];
+
+					private int depth;
+
+					@Override
+					public void enterNode(S semantics) throws IOException {
+						if (depth == idx.length) {
+							idx = Arrays.copyOf(idx, depth * 2);
+						}
+						idx[depth] = columns.add(depth == 0 ? -1 : idx[depth - 1], null);
+						depth++;
+						writer.write(semantics);
+					}
+
+					@Override
+					public void exitNode() {
+						columns.complete(idx[--depth]);
+					}
+
+				});
+			}
+
+			try (DataOutputStream out = output(file)) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(columns.size());
+				out.writeInt(writer.maxRecord);
+				out.writeLong(writer.length);
+				out.writeLong(0);
+
+				long ints = 0;
+				for (IntBuffer column : columns.columns()) {
+					for (int i = 0; i < column.capacity(); i++) {
+						out.writeInt(column.get(i));
+					}
+					ints += column.capacity();
+				}
+				if (ints % 2 != 0) {
+					out.writeInt(0);
+				}
+				Files.copy(offsets, out);
+				Files.copy(records, out);
+			}
+		} finally {
+			Files.deleteIfExists(records);
+			Files.deleteIfExists(offsets);
+		}
+	}
+
+	/**
+	 * Opens the tree by mapping the file, without reading it.
+	 * <p>
+	 * The mapping stays valid after the file is closed, until the tree is collected.
+	 */
+	public static <S extends TreeNodeSemantics<S>> ColumnarTree<S> open(Path file, SemanticsCodec<S> codec)
+			throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a tree file: " + file);
+			}
+			int size = header.getInt();
+			int maxRecord = header.getInt();
+			long length = header.getLong();
+
+			int[] lengths = { size, size, size, size, size + 1, Math.max(size - 1, 1) };
+			IntBuffer[] columns = new IntBuffer[lengths.length];
+			long position = HEADER_BYTES;
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = channel.map(MapMode.READ_ONLY, position, (long) lengths[i] * Integer.BYTES).asIntBuffer();
+				position += (long) lengths[i] * Integer.BYTES;
+			}
+			position = (position + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+
+			LongBuffer offsets = channel.map(MapMode.READ_ONLY, position, (size + 1L) * Long.BYTES).asLongBuffer();
+			position += (size + 1L) * Long.BYTES;
+
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+			for (int i = 0; i < chunks.length; i++) {
+				long from = i * CHUNK_BYTES;
+				chunks[i] = channel.map(MapMode.READ_ONLY, position + from, Math.min(length - from, CHUNK_BYTES + maxRecord));
+			}
+
+			TreeColumns<S> tree = new TreeColumns<>(size, columns, idx -> decode(codec, chunks, offsets, idx));
+			return new ColumnarTree<>(tree.node(0), TreeSnapshots.empty());
+		}
+	}
+
+	/**
+	 * Decodes the semantics record of the node.
+	 */
+	private static <S extends TreeNodeSemantics<S>> S decode(SemanticsCodec<S> codec, ByteBuffer[] chunks,
+			LongBuffer offsets, int idx) {
+		long from = offsets.get(idx);
+		long to = offsets.get(idx + 1);
+		ByteBuffer record = chunks[(int) (from / CHUNK_BYTES)].duplicate();
+		record.position((int) (from % CHUNK_BYTES));
+		record.limit((int) (from % CHUNK_BYTES + to - from));
+		try {
+			return codec.read(new DataInputStream(new BufferInputStream(record)));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static DataOutputStream output(Path file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+	}
+
+	/**
+	 * Writes the semantics records and their offsets, followed by the records length.
+	 */
+	private static final class RecordWriter<S extends TreeNodeSemantics<S>> implements Closeable {
+
+		private final SemanticsCodec<S> codec;
+
+		private final DataOutputStream recordsOut;
+
+		private final DataOutputStream offsetsOut;
+
+		private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+		private final DataOutputStream recordOut = new DataOutputStream(record);
+
+		/**
+		 * The length of the written records.
+		 */
+		long length;
+
+		/**
+		 * The maximal record length.
+		 */
+		int maxRecord;
+
+		RecordWriter(SemanticsCodec<S> codec, Path records, Path offsets) throws IOException {
+			this.codec = codec;
+			this.recordsOut = output(records);
+			this.offsetsOut = output(offsets);
+		}
+
+		void write(S semantics) throws IOException {
+			record.reset();
+			codec.write(semantics, recordOut);
+			recordOut.flush();
+			if (record.size() > Integer.MAX_VALUE - CHUNK_BYTES) {
+				throw new IOException("Semantics record too long: " + record.size());
+			}
+			offsetsOut.writeLong(length);
+			record.writeTo(recordsOut);
+			length += record.size();
+			maxRecord = Math.max(maxRecord, record.size());
+		}
+
+		@Override
+		public void close() throws IOException {
+			try (recordsOut; offsetsOut) {
+				offsetsOut.writeLong(length);
+			}
+		}
+
+	}
+
+	/**
+	 * The input stream of the buffer remaining bytes.
+	 */
+	private static final class BufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return len == 0 ? 0 : -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+	}
+
+}
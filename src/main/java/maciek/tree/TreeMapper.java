@@ -1,11 +1,26 @@
 package maciek.tree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
 
 /**
  * Maps the tree structure and semantics to a different implementation.
+ * <p>
+ * The tree is mapped with an explicit stack, so its depth is limited by the heap only, not by the thread stack size.
+ * <p>
+ * The tree may be mapped in parallel on a {@link ForkJoinPool} if the node factory
+ * {@link TreeNodeFactory#isConcurrent() is concurrent}. The subtrees larger than the threshold are then mapped by
+ * separate tasks, so deep and narrow trees which cannot be split are mapped by a single task. The mapped tree is the
+ * same as the sequentially mapped one.
+ * <p>
+ * With the {@link TreeNodeFactory.Incremental incremental} node factory the unmodified subtrees of the mutable tree
+ * are not mapped again, the subtrees they were mapped to before are reused.
  * 
  * @param <T> the target tree type
  * @param <N> the target tree node type
@@ -13,6 +28,16 @@ import java.util.function.BiFunction;
  */
 public class TreeMapper<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> {
 
+	/**
+	 * The default size of the subtrees split off to be mapped in parallel.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+	/**
+	 * The maximum number of the tasks per pool thread the tree is split into.
+	 */
+	private static final int TASKS_PER_THREAD = 8;
+
 	/**
 	 * The constructor of the mapped tree.
 	 */
@@ -47,7 +72,7 @@ public class TreeMapper<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S ext
 	 * @param treeSnapshots the tree history to be set on the new tree
 	 */
 	public T map(TreeNode<?, S> subtreeRoot, TreeSnapshots<S> treeSnapshots) {
-		return treeConstructor.apply(mapSubtree(subtreeRoot, null), treeSnapshots);
+		return treeConstructor.apply(mapSubtree(subtreeRoot, null, null, 0), treeSnapshots);
 	}
 	
 	/**
@@ -56,26 +81,360 @@ public class TreeMapper<T extends Tree<T, N, S>, N extends TreeNode<N, S>, S ext
 	 * @param subtreeRoot a subtree which structure and semantics is to be mapped.
 	 */
 	public T map(TreeNode<?, S> subtreeRoot) {
-		return treeConstructor.apply(mapSubtree(subtreeRoot, null), TreeSnapshots.empty());
+		return treeConstructor.apply(mapSubtree(subtreeRoot, null, null, 0), TreeSnapshots.empty());
 	}
 
 	/**
-	 * Maps the subtree.
+	 * Maps the tree in parallel, splitting off the subtrees larger than {@link #DEFAULT_PARALLEL_THRESHOLD}.
+	 * 
+	 * @param tree a tree which structure and semantics is to be mapped.
+	 * @param pool the pool the subtrees are mapped on
+	 */
+	public T map(Tree<?, ?, S> tree, ForkJoinPool pool) {
+		return map(tree.root(), tree.treeSnapshots(), pool, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Maps the subtree in parallel.
+	 * <p>
+	 * A subtree is split off to be mapped by another task if it is larger than the threshold, as is the rest of the
+	 * subtree the task maps. The threshold is raised to a fraction of the subtree size per pool thread, so the
+	 * number of the tasks, and the depth of their nested joins, is bounded by the pool parallelism. The subtree is
+	 * mapped sequentially in the calling thread if it is not larger than the threshold or the node factory is not
+	 * concurrent.
+	 * 
+	 * @param subtreeRoot a subtree which structure and semantics is to be mapped.
+	 * @param treeSnapshots the tree history to be set on the new tree
+	 * @param pool the pool the subtrees are mapped on
+	 * @param threshold the size of the subtrees not split any further
+	 * @throws IllegalArgumentException if the threshold is not positive
+	 */
+	public T map(TreeNode<?, S> subtreeRoot, TreeSnapshots<S> treeSnapshots, ForkJoinPool pool, int threshold) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("The threshold must be positive: " + threshold);
+		}
+		N root;
+		if (!nodeFactory.isConcurrent()) {
+			root = mapSubtree(subtreeRoot, null, null, 0);
+		} else {
+			Split split = new Split(subtreeRoot, threshold, pool.getParallelism());
+			root = split.size(subtreeRoot, 0) <= threshold ? mapSubtree(subtreeRoot, null, null, 0)
+					: pool.invoke(new MapTask(subtreeRoot, null, -1, split, 0));
+		}
+		return treeConstructor.apply(root, treeSnapshots);
+	}
+
+	/**
+	 * The handler assembling the tree from the node events, such as the ones decoded by a {@link TreeCodec}.
+	 */
+	public Assembler assembler() {
+		return assembler(TreeSnapshots.empty());
+	}
+
+	/**
+	 * The handler assembling the tree from the node events, such as the ones decoded by a {@link TreeCodec}.
+	 * 
+	 * @param treeSnapshots the tree history to be set on the new tree
+	 */
+	public Assembler assembler(TreeSnapshots<S> treeSnapshots) {
+		return new Assembler(treeSnapshots);
+	}
+
+	/**
+	 * Maps the subtree with the explicit stack, forking the tasks mapping the split off subtrees.
+	 * <p>
+	 * The nodes are created in pre-order and completed children first. The node with the forked tasks is completed
+	 * once they are joined.
 	 * 
 	 * @param parent the subtree root parent
+	 * @param split the splitting of the subtree, null if not split
+	 * @param pre the subtree root index in the pre-order of the whole mapped tree
 	 * 
 	 * @return the mapped subtree root
 	 */
-	private N mapSubtree(TreeNode<?, S> subtreeRoot, N parent) {
+	private N mapSubtree(TreeNode<?, S> subtreeRoot, N parent, Split split, int pre) {
+
+		// the entered nodes not exited yet, the stack top at the depth
+		@SuppressWarnings("unchecked")
+		TreeNode<?, S>[] sources = new TreeNode[16];
+		N[] nodes = newNodes(16);
+		@SuppressWarnings("unchecked")
+		List<N>[] children = new List[16];
+		int[] next = new int[16];
+		@SuppressWarnings("unchecked")
+		List<MapTask>[] forked = new List[16];
+		int depth = 0;
+
+		N reusedRoot = reused(parent, -1, subtreeRoot);
+		if (reusedRoot != null) {
+			return reusedRoot;
+		}
+
+		int remaining = split == null ? 0 : split.size(subtreeRoot, pre) - 1;
+		sources[0] = subtreeRoot;
+		children[0] = new ArrayList<>(subtreeRoot.childCount());
+		nodes[0] = nodeFactory.createNode(parent, children[0], AbstractTreeNode.storedSemantics(subtreeRoot));
+		pre++;
+
+		while (true) {
+			TreeNode<?, S> source = sources[depth];
+			if (next[depth] < source.childCount()) {
+				TreeNode<?, S> child = source.child(next[depth]++);
+				N reused = reused(nodes[depth], children[depth].size(), child);
+				if (reused != null) {
+					children[depth].add(reused);
+					if (split != null) {
+						int size = split.size(child, pre);
+						pre += size;
+						remaining -= size;
+					}
+					continue;
+				}
+				if (split != null) {
+					int size = split.size(child, pre);
+					if (size > split.threshold && remaining - size > split.threshold) {
+						MapTask task = new MapTask(child, nodes[depth], children[depth].size(), split, pre);
+						task.fork();
+						if (forked[depth] == null) {
+							forked[depth] = new ArrayList<>();
+						}
+						forked[depth].add(task);
+						children[depth].add(null);
+						pre += size;
+						remaining -= size;
+						continue;
+					}
+					remaining--;
+				}
+				if (++depth == sources.length) {
+					int length = depth * 2;
+					sources = Arrays.copyOf(sources, length);
+					nodes = Arrays.copyOf(nodes, length);
+					children = Arrays.copyOf(children, length);
+					next = Arrays.copyOf(next, length);
+					forked = Arrays.copyOf(forked, length);
+				}
+				sources[depth] = child;
+				children[depth] = new ArrayList<>(child.childCount());
+				nodes[depth] = nodeFactory.createNode(nodes[depth - 1], children[depth],
+						AbstractTreeNode.storedSemantics(child));
+				next[depth] = 0;
+				pre++;
+			} else {
+				N node = nodes[depth];
+				if (forked[depth] != null) {
+					List<N> ch = children[depth];
+					for (MapTask task : forked[depth]) {
+						ch.set(task.childIndex, task.join());
+					}
+					forked[depth] = null;
+				}
+				nodeFactory.nodeCompleted(node);
+				mapped(sources[depth], node);
+				sources[depth] = null;
+				nodes[depth] = null;
+				children[depth] = null;
+				if (depth == 0) {
+					return node;
+				}
+				children[--depth].add(node);
+			}
+		}
+	}
+
+	/**
+	 * The node reusing the earlier mapping of the unmodified source subtree, null if the source is to be mapped.
+	 * 
+	 * @param childIdx the node index in the parent children list
+	 */
+	@SuppressWarnings("unchecked")
+	private N reused(N parent, int childIdx, TreeNode<?, S> source) {
+		if (!(nodeFactory instanceof TreeNodeFactory.Incremental)) {
+			return null;
+		}
+		return (N) ((TreeNodeFactory.Incremental<S>) nodeFactory).reused((ImmutableTreeNode<S>) parent, childIdx,
+				source);
+	}
+
+	/**
+	 * Notifies the incremental node factory the node is mapped from the source.
+	 */
+	@SuppressWarnings("unchecked")
+	private void mapped(TreeNode<?, S> source, N node) {
+		if (nodeFactory instanceof TreeNodeFactory.Incremental) {
+			((TreeNodeFactory.Incremental<S>) nodeFactory).mapped(source, (ImmutableTreeNode<S>) node);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private N[] newNodes(int length) {
+		return (N[]) new TreeNode[length];
+	}
+
+	/**
+	 * The splitting of the mapped tree into the subtrees mapped in parallel.
+	 */
+	private static final class Split {
+
+		/**
+		 * The size of the subtrees not split any further.
+		 */
+		private final int threshold;
+
+		/**
+		 * The subtree sizes of the nodes in pre-order, null if the nodes know their subtree sizes.
+		 */
+		private final int[] sizes;
+
+		Split(TreeNode<?, ?> root, int threshold, int parallelism) {
+			this.sizes = root instanceof ImmutableTreeNode || root instanceof ColumnarTreeNode ? null
+					: subtreeSizes(root);
+			this.threshold = Math.max(threshold, size(root, 0) / (parallelism * TASKS_PER_THREAD));
+		}
+
+		/**
+		 * The size of the subtree of the node.
+		 * 
+		 * @param pre the node index in the pre-order of the whole mapped tree
+		 */
+		int size(TreeNode<?, ?> node, int pre) {
+			if (sizes != null) {
+				return sizes[pre];
+			}
+			return node instanceof ImmutableTreeNode ? ((ImmutableTreeNode<?>) node).subtreeSize()
+					: ((ColumnarTreeNode<?>) node).subtreeSize();
+		}
+
+		/**
+		 * The subtree sizes of the nodes in pre-order, counted with the explicit stack.
+		 */
+		private static int[] subtreeSizes(TreeNode<?, ?> root) {
+			int[] sizes = new int[16];
+			TreeNode<?, ?>[] stack = new TreeNode[16];
+			int[] pres = new int[16];
+			int[] next = new int[16];
+			int depth = 0;
+			int count = 1;
+			stack[0] = root;
+			while (depth >= 0) {
+				TreeNode<?, ?> node = stack[depth];
+				if (next[depth] < node.childCount()) {
+					TreeNode<?, ?> child = node.child(next[depth]++);
+					if (++depth == stack.length) {
+						stack = Arrays.copyOf(stack, depth * 2);
+						pres = Arrays.copyOf(pres, depth * 2);
+						next = Arrays.copyOf(next, depth * 2);
+					}
+					stack[depth] = child;
+					pres[depth] = count++;
+					next[depth] = 0;
+				} else {
+					if (pres[depth] >= sizes.length) {
+						sizes = Arrays.copyOf(sizes, Math.max(sizes.length * 2, pres[depth] + 1));
+					}
+					sizes[pres[depth]] = count - pres[depth];
+					stack[depth--] = null;
+				}
+			}
+			return sizes;
+		}
+
+	}
+
+	/**
+	 * The task mapping a subtree split off.
+	 */
+	private final class MapTask extends RecursiveTask<N> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TreeNode<?, S> subtreeRoot;
+
+		private final N parent;
+
+		/**
+		 * The subtree root index in its parent children list.
+		 */
+		private final int childIndex;
+
+		private final Split split;
+
+		/**
+		 * The subtree root index in the pre-order of the whole mapped tree.
+		 */
+		private final int pre;
+
+		MapTask(TreeNode<?, S> subtreeRoot, N parent, int childIndex, Split split, int pre) {
+			this.subtreeRoot = subtreeRoot;
+			this.parent = parent;
+			this.childIndex = childIndex;
+			this.split = split;
+			this.pre = pre;
+		}
+
+		@Override
+		protected N compute() {
+			return mapSubtree(subtreeRoot, parent, split, pre);
+		}
+
+	}
+
+	/**
+	 * Assembles the tree from the node events.
+	 * <p>
+	 * The nodes are created as the events arrive, the same way as the mapped nodes.
+	 */
+	public class Assembler implements TreeEventHandler<S> {
+
+		private final TreeSnapshots<S> treeSnapshots;
+
+		/**
+		 * The entered nodes not exited yet.
+		 */
+		private final Deque<N> entered = new ArrayDeque<>();
+
+		/**
+		 * The children lists of the entered nodes.
+		 */
+		private final Deque<List<N>> children = new ArrayDeque<>();
+
+		private T tree;
 
-		List<N> children = new ArrayList<>(subtreeRoot.children().size());
-		N node = nodeFactory.createNode(parent, children, subtreeRoot.semantics());
+		private Assembler(TreeSnapshots<S> treeSnapshots) {
+			this.treeSnapshots = treeSnapshots;
+		}
+
+		@Override
+		public void enterNode(S semantics) {
+			if (tree != null) {
+				throw new IllegalStateException("The tree is already assembled");
+			}
+			List<N> ch = new ArrayList<>();
+			N node = nodeFactory.createNode(entered.peek(), ch, semantics);
+			if (!children.isEmpty()) {
+				children.peek().add(node);
+			}
+			entered.push(node);
+			children.push(ch);
+		}
+
+		@Override
+		public void exitNode() {
+			N node = entered.pop();
+			children.pop();
+			nodeFactory.nodeCompleted(node);
+			if (entered.isEmpty()) {
+				tree = treeConstructor.apply(node, treeSnapshots);
+			}
+		}
 
-		for (TreeNode<?, S> ch : subtreeRoot.children()) {
-			children.add(mapSubtree(ch, node));
+		/**
+		 * The assembled tree, null until the root is exited.
+		 */
+		public T tree() {
+			return tree;
 		}
 
-		return node;
 	}
 
 }
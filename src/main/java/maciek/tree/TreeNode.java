@@ -18,6 +18,16 @@ public interface TreeNode<N extends TreeNode<N, S>, S extends TreeNodeSemantics<
 	 */
 	List<? extends N> children();
 
+	/**
+	 * Read-only view of this node's children list, not copied.
+	 */
+	List<? extends N> childrenView();
+
+	/**
+	 * The number of this node's children.
+	 */
+	int childCount();
+
 	/**
 	 * The semantic of this node.
 	 */
@@ -28,6 +38,27 @@ public interface TreeNode<N extends TreeNode<N, S>, S extends TreeNodeSemantics<
 	 */
 	List<? extends N> descendants();
 
+	/**
+	 * This node and its descendants lazily iterated in pre-order.
+	 * 
+	 * @see TreeTraversal#preOrder(TreeNode)
+	 */
+	Iterable<N> preOrder();
+
+	/**
+	 * This node and its descendants lazily iterated in post-order.
+	 * 
+	 * @see TreeTraversal#postOrder(TreeNode)
+	 */
+	Iterable<N> postOrder();
+
+	/**
+	 * This node and its descendants lazily iterated level by level.
+	 * 
+	 * @see TreeTraversal#levelOrder(TreeNode)
+	 */
+	Iterable<N> levelOrder();
+
 	/**
 	 * The absolute tree path of this node.
 	 */
@@ -1,7 +1,14 @@
 package maciek.tree;
 
-import java.util.LinkedList;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import maciek.tree.ImmutableTreeNode.Body;
 
 /**
  * Factory for tree node.
@@ -23,7 +30,23 @@ public interface TreeNodeFactory<N extends TreeNode<N, S>, S extends TreeNodeSem
 	 * @return created node
 	 */
 	default N createNode(S semantics) {
-		return createNode(null, new LinkedList<>(), semantics);
+		return createNode(null, new ArrayList<>(), semantics);
+	}
+
+	/**
+	 * Completes the node once all its children are created and added to its children list.
+	 * <p>
+	 * The nodes are completed children first.
+	 */
+	default void nodeCompleted(N node) {
+	}
+
+	/**
+	 * Whether the nodes of different subtrees may be created and completed concurrently, as the {@link TreeMapper}
+	 * mapping in parallel does. Each node is still created after its parent and completed after its children.
+	 */
+	default boolean isConcurrent() {
+		return false;
 	}
 
 	/**
@@ -36,6 +59,221 @@ public interface TreeNodeFactory<N extends TreeNode<N, S>, S extends TreeNodeSem
 			return new ImmutableTreeNode<S>(parent, children, semantics);
 		}
 
+		@Override
+		public void nodeCompleted(ImmutableTreeNode<S> node) {
+			node.complete();
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return true;
+		}
+
+	}
+
+	/**
+	 * The tree node factory for immutable tree nodes mapped incrementally from the mutable ones.
+	 * <p>
+	 * Each mapped mutable node remembers the subtree it was mapped to until its subtree is modified, the modification
+	 * marking the node and its ancestors. The {@link TreeMapper} then maps again only the modified paths, reusing the
+	 * unmodified subtrees of the tree mapped before, so mapping the edited tree takes O(changed &times; depth).
+	 * <p>
+	 * The unmodified subtrees are found by the nodes, not by the paths, so they are reused also if moved within the
+	 * tree or to another one.
+	 */
+	public static class Incremental<S extends TreeNodeSemantics<S>> extends Immutable<S> {
+
+		/**
+		 * The view of the subtree the unmodified source subtree was mapped to, null if the source is to be mapped.
+		 * 
+		 * @param parent the view parent, null for the root
+		 * @param childIdx the view index in the parent children list
+		 */
+		@SuppressWarnings("unchecked")
+		ImmutableTreeNode<S> reused(ImmutableTreeNode<S> parent, int childIdx, TreeNode<?, S> source) {
+			Body<S> body = source instanceof MutableTreeNode ? ((MutableTreeNode<S>) source).mapped : null;
+			return body == null ? null : ImmutableTreeNode.view(parent, body, childIdx);
+		}
+
+		/**
+		 * Remembers the completed node on the mutable source node.
+		 */
+		@SuppressWarnings("unchecked")
+		void mapped(TreeNode<?, S> source, ImmutableTreeNode<S> node) {
+			if (source instanceof MutableTreeNode) {
+				((MutableTreeNode<S>) source).mapped = node.body();
+			}
+		}
+
+	}
+
+	/**
+	 * The tree node factory for immutable tree nodes sharing the identical subtrees.
+	 * <p>
+	 * Each completed subtree is replaced with the canonical one with equal semantics and identical children, so the
+	 * equal subtrees of all the trees mapped with the factory are kept once and compared in O(1). The canonical
+	 * subtrees are weakly referenced, they are released once no tree uses them.
+	 * <p>
+	 * Thread safe, may be shared by the mappers.
+	 */
+	public static class Interning<S extends TreeNodeSemantics<S>> extends Immutable<S> {
+
+		/**
+		 * The canonical subtrees.
+		 */
+		private final ConcurrentHashMap<Canonical<S>, Canonical<S>> canonical = new ConcurrentHashMap<>();
+
+		/**
+		 * The released canonical subtrees.
+		 */
+		private final ReferenceQueue<Body<S>> released = new ReferenceQueue<>();
+
+		private final LongAdder hits = new LongAdder();
+
+		private final LongAdder misses = new LongAdder();
+
+		@Override
+		public void nodeCompleted(ImmutableTreeNode<S> node) {
+			node.complete();
+			node.intern(this);
+		}
+
+		/**
+		 * The number of subtrees found already interned.
+		 */
+		public long hits() {
+			return hits.sum();
+		}
+
+		/**
+		 * The number of subtrees interned as the canonical ones.
+		 */
+		public long misses() {
+			return misses.sum();
+		}
+
+		/**
+		 * The number of canonical subtrees, including the released ones not removed yet.
+		 */
+		public int size() {
+			return canonical.size();
+		}
+
+		/**
+		 * The canonical body equal to the given one, which children are canonical.
+		 */
+		Body<S> intern(Body<S> body) {
+			removeReleased();
+			Canonical<S> candidate = new Canonical<>(body, released);
+			while (true) {
+				Canonical<S> existing = canonical.putIfAbsent(candidate, candidate);
+				if (existing == null) {
+					misses.increment();
+					return body;
+				}
+				Body<S> b = existing.get();
+				if (b != null) {
+					hits.increment();
+					return b;
+				}
+				// released meanwhile
+				canonical.remove(existing, existing);
+			}
+		}
+
+		private void removeReleased() {
+			for (Object ref; (ref = released.poll()) != null;) {
+				canonical.remove(ref, ref);
+			}
+		}
+
+		/**
+		 * The weak reference to a canonical body, equal to the reference to a body with equal semantics and
+		 * identical children.
+		 */
+		private static final class Canonical<S extends TreeNodeSemantics<S>> extends WeakReference<Body<S>> {
+
+			private final int hash;
+
+			Canonical(Body<S> body, ReferenceQueue<Body<S>> queue) {
+				super(body, queue);
+				this.hash = body.hash;
+			}
+
+			@Override
+			public int hashCode() {
+				return hash;
+			}
+
+			@Override
+			public boolean equals(Object obj) {
+				if (obj == this) {
+					return true;
+				}
+				if (!(obj instanceof Canonical)) {
+					return false;
+				}
+				@SuppressWarnings("unchecked")
+				Canonical<S> o = (Canonical<S>) obj;
+				Body<S> a = get();
+				Body<S> b = o.get();
+				if (a == null || b == null || hash != o.hash || a.children.length != b.children.length
+						|| !Objects.equals(a.semantics, b.semantics)) {
+					return false;
+				}
+				for (int i = 0; i < a.children.length; i++) {
+					if (a.children[i] != b.children[i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+		}
+
+	}
+
+	/**
+	 * The tree node factory for columnar tree nodes.
+	 * <p>
+	 * The nodes are appended to the columns of the tree being created, so they must be created in pre-order and
+	 * completed children first, as the {@link TreeMapper} does. The children lists are ignored. A new tree is started
+	 * with each root created.
+	 * <p>
+	 * Not thread safe.
+	 */
+	public static class Columnar<S extends TreeNodeSemantics<S>> implements TreeNodeFactory<ColumnarTreeNode<S>, S> {
+
+		/**
+		 * Whether the columns are kept in direct buffers.
+		 */
+		private final boolean offHeap;
+
+		/**
+		 * The columns of the tree being created.
+		 */
+		private TreeColumns<S> columns;
+
+		public Columnar(boolean offHeap) {
+			this.offHeap = offHeap;
+		}
+
+		@Override
+		public ColumnarTreeNode<S> createNode(ColumnarTreeNode<S> parent, List<ColumnarTreeNode<S>> children, S semantics) {
+			if (parent == null) {
+				columns = new TreeColumns<>(offHeap, true);
+			}
+			int idx = columns.add(parent == null ? -1 : parent.index(), null);
+			ColumnarTreeNode<S> node = columns.node(idx);
+			columns.setSemantics(idx, semantics.isShareable() ? semantics : semantics.copy(node));
+			return node;
+		}
+
+		@Override
+		public void nodeCompleted(ColumnarTreeNode<S> node) {
+			columns.complete(node.index());
+		}
+
 	}
 
 	/**
@@ -50,6 +288,11 @@ public interface TreeNodeFactory<N extends TreeNode<N, S>, S extends TreeNodeSem
 			return new MutableTreeNode<S>(parent, children, semantics);
 		}
 
+		@Override
+		public boolean isConcurrent() {
+			return true;
+		}
+
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A secondary index of the immutable tree nodes keyed by a function of their semantics.
+ * <p>
+ * Either a hash index, answering the lookups by key, or a sorted one, answering also the key range lookups. The
+ * nodes of each key are listed in pre-order. The nodes with null key are not indexed.
+ * <p>
+ * Built once per tree by {@link ImmutableTree#index(Key)} and shared by the {@link TreeNodeQuery queries} of the
+ * tree. Immutable and thread safe once built.
+ */
+public final class TreeNodeIndex<S extends TreeNodeSemantics<S>, K> {
+
+	private final Key<S, K> key;
+
+	/**
+	 * The nodes by key.
+	 */
+	private final Map<K, List<ImmutableTreeNode<S>>> nodes;
+
+	TreeNodeIndex(Key<S, K> key, ImmutableTree<S> tree) {
+		this.key = key;
+		Map<K, List<ImmutableTreeNode<S>>> nodes = key.comparator == null ? new HashMap<>() : new TreeMap<>(key.comparator);
+		for (ImmutableTreeNode<S> n : tree.nodes()) {
+			K k = key.function.apply(n.semantics());
+			if (k != null) {
+				nodes.computeIfAbsent(k, x -> new ArrayList<>(1)).add(n);
+			}
+		}
+		this.nodes = nodes;
+	}
+
+	/**
+	 * The hash index key.
+	 */
+	public static <S extends TreeNodeSemantics<S>, K> Key<S, K> hash(Function<? super S, ? extends K> function) {
+		return new Key<S, K>(function, null);
+	}
+
+	/**
+	 * The sorted index key, ordered naturally.
+	 */
+	public static <S extends TreeNodeSemantics<S>, K extends Comparable<? super K>> Key<S, K> sorted(
+			Function<? super S, ? extends K> function) {
+		return new Key<S, K>(function, Comparator.naturalOrder());
+	}
+
+	/**
+	 * The sorted index key.
+	 */
+	public static <S extends TreeNodeSemantics<S>, K> Key<S, K> sorted(Function<? super S, ? extends K> function,
+			Comparator<? super K> comparator) {
+		return new Key<S, K>(function, comparator);
+	}
+
+	public Key<S, K> key() {
+		return key;
+	}
+
+	/**
+	 * The nodes with given key in pre-order, read-only.
+	 */
+	public List<ImmutableTreeNode<S>> get(K k) {
+		List<ImmutableTreeNode<S>> list = nodes.get(k);
+		return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * The nodes with the key in the range, in pre-order.
+	 *
+	 * @param from the lowest key, inclusive
+	 * @param to the highest key, inclusive
+	 * @throws UnsupportedOperationException if the index is not sorted
+	 */
+	public List<ImmutableTreeNode<S>> range(K from, K to) {
+		if (key.comparator == null) {
+			throw new UnsupportedOperationException("The hash index doesn't support range lookups");
+		}
+		List<ImmutableTreeNode<S>> range = new ArrayList<>();
+		for (List<ImmutableTreeNode<S>> list : ((NavigableMap<K, List<ImmutableTreeNode<S>>>) nodes)
+				.subMap(from, true, to, true)
+				.values()) {
+			range.addAll(list);
+		}
+		range.sort(Comparator.comparingInt(ImmutableTreeNode::preOrderIndex));
+		return range;
+	}
+
+	/**
+	 * The number of distinct keys.
+	 */
+	public int keyCount() {
+		return nodes.size();
+	}
+
+	/**
+	 * The index definition, identifying the index of the tree.
+	 */
+	public static final class Key<S extends TreeNodeSemantics<S>, K> {
+
+		private final Function<? super S, ? extends K> function;
+
+		/**
+		 * The key order, null for the hash index.
+		 */
+		private final Comparator<? super K> comparator;
+
+		private Key(Function<? super S, ? extends K> function, Comparator<? super K> comparator) {
+			this.function = function;
+			this.comparator = comparator;
+		}
+
+		/**
+		 * The key of the semantics.
+		 */
+		public K apply(S semantics) {
+			return function.apply(semantics);
+		}
+
+		public boolean isSorted() {
+			return comparator != null;
+		}
+
+		/**
+		 * Compares the keys in the sorted index order.
+		 */
+		int compare(K a, K b) {
+			return comparator.compare(a, b);
+		}
+
+	}
+
+}
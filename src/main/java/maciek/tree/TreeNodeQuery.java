@@ -1,41 +1,280 @@
 package maciek.tree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
  * A location in the tree determined by the predicate and the comparator.
+ * <p>
+ * The query of the semantics key uses the matching {@link TreeNodeIndex} registered on the immutable tree, if any, to
+ * consider only the nodes with the key. The query of the {@link TreeSelector} considers only the nodes it selects.
+ * Otherwise the tree nodes are scanned once.
  */
 public class TreeNodeQuery<S extends TreeNodeSemantics<S>> implements TreeLocation<S> {
 
 	/**
-	 * Predicate the queried node must fulfill.
+	 * Predicates the queried node must fulfill.
 	 */
-	private Predicate<TreeNode<?, S>> predicate;
+	private final List<Predicate<TreeNode<?, S>>> predicates;
 
 	/**
-	 * Determines the precedence if multiple nodes fulfills the predicate.
+	 * Determines the precedence if multiple nodes fulfills the predicate, null for the pre-order.
 	 */
-	private Comparator<TreeNode<?, S>> comparator;
+	private final Comparator<TreeNode<?, S>> comparator;
+
+	/**
+	 * The candidate nodes of the tree in pre-order, null if the tree nodes are to be scanned.
+	 */
+	private final Function<Tree<?, ?, S>, List<? extends TreeNode<?, S>>> candidates;
+
+	/**
+	 * The candidates of the queries scanning the tree nodes.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final Function SCAN = tree -> null;
+
+	/**
+	 * Creates the query of the node fulfilling the predicate, the first one in the comparator order.
+	 *
+	 * @param comparator the comparator, null for the first node in pre-order
+	 */
+	public TreeNodeQuery(Predicate<TreeNode<?, S>> predicate, Comparator<TreeNode<?, S>> comparator) {
+		this(List.of(predicate), comparator, scan());
+	}
+
+	private TreeNodeQuery(List<Predicate<TreeNode<?, S>>> predicates, Comparator<TreeNode<?, S>> comparator,
+			Function<Tree<?, ?, S>, List<? extends TreeNode<?, S>>> candidates) {
+		this.predicates = predicates;
+		this.comparator = comparator;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * The query of the node with given semantics key.
+	 *
+	 * @param comparator the comparator, null for the first node in pre-order
+	 */
+	public static <S extends TreeNodeSemantics<S>, K> TreeNodeQuery<S> byKey(TreeNodeIndex.Key<S, K> key, K value,
+			Comparator<TreeNode<?, S>> comparator) {
+		Objects.requireNonNull(value);
+		KeyCondition<S, K> condition = new KeyCondition<>(key, value, value, false);
+		return new TreeNodeQuery<>(List.of(condition), comparator, condition);
+	}
+
+	/**
+	 * The query of the node with the semantics key in the range.
+	 *
+	 * @param from the lowest key, inclusive
+	 * @param to the highest key, inclusive
+	 * @param comparator the comparator, null for the first node in pre-order
+	 * @throws IllegalArgumentException if the key is not sorted
+	 */
+	public static <S extends TreeNodeSemantics<S>, K> TreeNodeQuery<S> byKeyRange(TreeNodeIndex.Key<S, K> key, K from,
+			K to, Comparator<TreeNode<?, S>> comparator) {
+		if (!key.isSorted()) {
+			throw new IllegalArgumentException("The range query requires the sorted index key");
+		}
+		KeyCondition<S, K> condition = new KeyCondition<>(key, from, to, true);
+		return new TreeNodeQuery<>(List.of(condition), comparator, condition);
+	}
+
+	/**
+	 * The query of the node selected by the selector.
+	 *
+	 * @param comparator the comparator, null for the first node in pre-order
+	 */
+	public static <S extends TreeNodeSemantics<S>> TreeNodeQuery<S> bySelector(TreeSelector<S> selector,
+			Comparator<TreeNode<?, S>> comparator) {
+		return new TreeNodeQuery<>(List.of(), comparator, new SelectorCandidates<>(selector));
+	}
+
+	/**
+	 * The query of the node fulfilling also the other predicate.
+	 */
+	public TreeNodeQuery<S> and(Predicate<TreeNode<?, S>> other) {
+		List<Predicate<TreeNode<?, S>>> and = new ArrayList<>(predicates);
+		and.add(other);
+		return new TreeNodeQuery<>(Collections.unmodifiableList(and), comparator, candidates);
+	}
 
 	@Override
 	public AbsoluteTreePath get(Tree<?, ?, S> tree) {
-		return queryNode(tree).absoluteTreePath();
+		TreeNode<?, S> node = queryNode(tree);
+		return node == null ? null : node.absoluteTreePath();
 	}
 
 	/**
 	 * Queries for the tree node.
+	 * <p>
+	 * Null if no node fulfills the predicate. Of the equal nodes the first one in pre-order is returned.
 	 */
 	public TreeNode<?, S> queryNode(Tree<?, ?, S> tree) {
 
-		TreeNode<?, S> node = tree.nodes()
-				.stream()
-				.filter(predicate)
-				.sorted(comparator)
-				.findFirst()
-				.orElse(null);
+		List<? extends TreeNode<?, S>> nodes = candidates.apply(tree);
+
+		TreeNode<?, S> best = null;
+		for (TreeNode<?, S> n : nodes != null ? nodes : tree) {
+			if (test(n) && precedes(n, best)) {
+				best = n;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Whether the node fulfills the predicates.
+	 */
+	boolean test(TreeNode<?, S> node) {
+		for (Predicate<TreeNode<?, S>> p : predicates) {
+			if (!p.test(node)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the node precedes the best node so far, null if none, visited before the node.
+	 */
+	boolean precedes(TreeNode<?, S> node, TreeNode<?, S> best) {
+		return best == null || (comparator != null && comparator.compare(node, best) < 0);
+	}
+
+	List<Predicate<TreeNode<?, S>>> predicates() {
+		return predicates;
+	}
+
+	Comparator<TreeNode<?, S>> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * The candidate nodes of the tree in pre-order, null if the tree nodes are to be scanned.
+	 */
+	List<? extends TreeNode<?, S>> candidates(Tree<?, ?, S> tree) {
+		return candidates.apply(tree);
+	}
+
+	/**
+	 * The key of the query, equal for the queries of the same node.
+	 */
+	Object key() {
+		return Arrays.asList(predicates, comparator, candidates);
+	}
+
+	/**
+	 * The condition on the semantics key, equal to the condition on the same key and values, both the predicate and
+	 * the candidates of the queries by key.
+	 */
+	private static final class KeyCondition<S extends TreeNodeSemantics<S>, K>
+			implements Predicate<TreeNode<?, S>>, Function<Tree<?, ?, S>, List<? extends TreeNode<?, S>>> {
+
+		private final TreeNodeIndex.Key<S, K> key;
+
+		/**
+		 * The lowest key, inclusive, the very key if the condition is not a range.
+		 */
+		private final K from;
+
+		/**
+		 * The highest key, inclusive, the very key if the condition is not a range.
+		 */
+		private final K to;
+
+		private final boolean range;
+
+		KeyCondition(TreeNodeIndex.Key<S, K> key, K from, K to, boolean range) {
+			this.key = key;
+			this.from = from;
+			this.to = to;
+			this.range = range;
+		}
+
+		@Override
+		public boolean test(TreeNode<?, S> n) {
+			K k = key.apply(n.semantics());
+			if (!range) {
+				return from.equals(k);
+			}
+			return k != null && key.compare(from, k) <= 0 && key.compare(k, to) <= 0;
+		}
 
-		return node;
+		@Override
+		public List<? extends TreeNode<?, S>> apply(Tree<?, ?, S> tree) {
+			TreeNodeIndex<S, K> index = registeredIndex(tree, key);
+			if (index == null) {
+				return null;
+			}
+			return range ? index.range(from, to) : index.get(from);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof KeyCondition)) {
+				return false;
+			}
+			KeyCondition<?, ?> other = (KeyCondition<?, ?>) obj;
+			return key == other.key && range == other.range && Objects.equals(from, other.from)
+					&& Objects.equals(to, other.to);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(System.identityHashCode(key), from, to, range);
+		}
+
+	}
+
+	/**
+	 * The candidates selected by the selector, equal to the candidates of the same selector.
+	 */
+	private static final class SelectorCandidates<S extends TreeNodeSemantics<S>>
+			implements Function<Tree<?, ?, S>, List<? extends TreeNode<?, S>>> {
+
+		private final TreeSelector<S> selector;
+
+		SelectorCandidates(TreeSelector<S> selector) {
+			this.selector = selector;
+		}
+
+		@Override
+		public List<? extends TreeNode<?, S>> apply(Tree<?, ?, S> tree) {
+			return selector.select(tree);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof SelectorCandidates && ((SelectorCandidates<?>) obj).selector.equals(selector);
+		}
+
+		@Override
+		public int hashCode() {
+			return selector.hashCode();
+		}
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S extends TreeNodeSemantics<S>> Function<Tree<?, ?, S>, List<? extends TreeNode<?, S>>> scan() {
+		return SCAN;
+	}
+
+	/**
+	 * The index registered on the immutable tree, null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <S extends TreeNodeSemantics<S>, K> TreeNodeIndex<S, K> registeredIndex(Tree<?, ?, S> tree,
+			TreeNodeIndex.Key<S, K> key) {
+		return tree instanceof ImmutableTree ? ((ImmutableTree<S>) tree).registeredIndex(key) : null;
 	}
 
 }
@@ -0,0 +1,260 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.StreamSupport;
+
+/**
+ * Many queries evaluated together in a single traversal of the tree.
+ * <p>
+ * The equal queries are evaluated once, and each distinct predicate is tested at most once per node however many
+ * queries share it. The queries are grouped by their first predicate, so only the queries which first predicate holds
+ * for the node are considered further. The queries using an index or a selector consider their candidate nodes instead. The traversal
+ * can be partitioned across the cores on the subtree boundaries.
+ * <p>
+ * Immutable and thread safe.
+ */
+public final class TreeNodeQueryBatch<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * The queries in the given order.
+	 */
+	private final List<TreeNodeQuery<S>> queries;
+
+	/**
+	 * The index of the distinct query each query is evaluated as.
+	 */
+	private final int[] distinct;
+
+	/**
+	 * The distinct queries.
+	 */
+	private final List<TreeNodeQuery<S>> distinctQueries = new ArrayList<>();
+
+	/**
+	 * The distinct predicates.
+	 */
+	private final List<Predicate<TreeNode<?, S>>> predicates = new ArrayList<>();
+
+	/**
+	 * The indexes of the distinct predicates of each distinct query.
+	 */
+	private final List<int[]> queryPredicates = new ArrayList<>();
+
+	/**
+	 * The distinct first predicates, -1 for the queries without predicates, and the distinct queries starting with
+	 * each of them.
+	 */
+	private final int[] firstPredicates;
+
+	private final int[][] firstPredicateQueries;
+
+	/**
+	 * Creates the batch of the queries, deduplicating the equal queries and predicates.
+	 */
+	public TreeNodeQueryBatch(Collection<? extends TreeNodeQuery<S>> queries) {
+		this.queries = Collections.unmodifiableList(new ArrayList<>(queries));
+		this.distinct = new int[this.queries.size()];
+
+		Map<Object, Integer> queryIdx = new HashMap<>();
+		Map<Predicate<TreeNode<?, S>>, Integer> predicateIdx = new HashMap<>();
+		for (int i = 0; i < distinct.length; i++) {
+			TreeNodeQuery<S> q = this.queries.get(i);
+			Object key = q.key();
+			Integer idx = queryIdx.get(key);
+			if (idx == null) {
+				idx = distinctQueries.size();
+				queryIdx.put(key, idx);
+				distinctQueries.add(q);
+				queryPredicates.add(q.predicates()
+						.stream()
+						.mapToInt(p -> predicateIdx.computeIfAbsent(p, x -> {
+							predicates.add(p);
+							return predicates.size() - 1;
+						}))
+						.toArray());
+			}
+			distinct[i] = idx;
+		}
+
+		Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+		for (int q = 0; q < queryPredicates.size(); q++) {
+			int[] ps = queryPredicates.get(q);
+			groups.computeIfAbsent(ps.length == 0 ? -1 : ps[0], x -> new ArrayList<>()).add(q);
+		}
+		firstPredicates = new int[groups.size()];
+		firstPredicateQueries = new int[groups.size()][];
+		int g = 0;
+		for (Map.Entry<Integer, List<Integer>> e : groups.entrySet()) {
+			firstPredicates[g] = e.getKey();
+			firstPredicateQueries[g++] = e.getValue().stream().mapToInt(Integer::intValue).toArray();
+		}
+	}
+
+	/**
+	 * The number of distinct queries.
+	 */
+	public int distinctQueries() {
+		return distinctQueries.size();
+	}
+
+	/**
+	 * The number of distinct predicates.
+	 */
+	public int distinctPredicates() {
+		return predicates.size();
+	}
+
+	/**
+	 * Queries for the tree nodes, sequentially.
+	 *
+	 * @return the node of each query in the given order, null if none
+	 */
+	public List<TreeNode<?, S>> queryNodes(Tree<?, ?, S> tree) {
+		return queryNodes(tree, false);
+	}
+
+	/**
+	 * Queries for the tree nodes.
+	 *
+	 * @param parallel whether the tree is traversed in parallel
+	 * @return the node of each query in the given order, null if none
+	 */
+	public List<TreeNode<?, S>> queryNodes(Tree<?, ?, S> tree, boolean parallel) {
+
+		// the queries considering their candidates, the others scan the tree
+		TreeNode<?, S>[] best = newResults();
+		boolean[] scanning = new boolean[distinctQueries.size()];
+		boolean scan = false;
+		for (int q = 0; q < scanning.length; q++) {
+			TreeNodeQuery<S> query = distinctQueries.get(q);
+			List<? extends TreeNode<?, S>> candidates = query.candidates(tree);
+			if (candidates != null) {
+				for (TreeNode<?, S> n : candidates) {
+					if (query.test(n) && query.precedes(n, best[q])) {
+						best[q] = n;
+					}
+				}
+			} else {
+				scanning[q] = true;
+				scan = true;
+			}
+		}
+
+		if (scan) {
+			Scan s = StreamSupport.stream(tree.spliterator(), parallel)
+					.collect(() -> new Scan(scanning), Scan::accept, Scan::combine);
+			for (int q = 0; q < scanning.length; q++) {
+				if (scanning[q]) {
+					best[q] = s.best[q];
+				}
+			}
+		}
+
+		List<TreeNode<?, S>> nodes = new ArrayList<>(distinct.length);
+		for (int q : distinct) {
+			nodes.add(best[q]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Queries for the tree node paths, sequentially.
+	 *
+	 * @return the path of each query in the given order, null if none
+	 */
+	public List<AbsoluteTreePath> get(Tree<?, ?, S> tree) {
+		List<AbsoluteTreePath> paths = new ArrayList<>(distinct.length);
+		for (TreeNode<?, S> n : queryNodes(tree)) {
+			paths.add(n == null ? null : n.absoluteTreePath());
+		}
+		return paths;
+	}
+
+	/**
+	 * The queries in the given order.
+	 */
+	public List<TreeNodeQuery<S>> queries() {
+		return queries;
+	}
+
+	@SuppressWarnings("unchecked")
+	private TreeNode<?, S>[] newResults() {
+		return new TreeNode[distinctQueries.size()];
+	}
+
+	/**
+	 * The best nodes of the scanning queries in a range of the tree nodes in pre-order.
+	 */
+	private final class Scan {
+
+		private final boolean[] scanning;
+
+		private final TreeNode<?, S>[] best = newResults();
+
+		/**
+		 * The results of the predicates for the current node, valid if stamped with the node number.
+		 */
+		private final boolean[] results = new boolean[predicates.size()];
+
+		private final int[] stamps = new int[predicates.size()];
+
+		private int node;
+
+		Scan(boolean[] scanning) {
+			this.scanning = scanning;
+		}
+
+		void accept(TreeNode<?, S> n) {
+			node++;
+			for (int g = 0; g < firstPredicates.length; g++) {
+				int p = firstPredicates[g];
+				if (p >= 0 && !test(n, p)) {
+					continue;
+				}
+				for (int q : firstPredicateQueries[g]) {
+					if (scanning[q] && test(n, queryPredicates.get(q)) && distinctQueries.get(q).precedes(n, best[q])) {
+						best[q] = n;
+					}
+				}
+			}
+		}
+
+		private boolean test(TreeNode<?, S> n, int[] queryPredicates) {
+			for (int p : queryPredicates) {
+				if (!test(n, p)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean test(TreeNode<?, S> n, int p) {
+			if (stamps[p] != node) {
+				stamps[p] = node;
+				results[p] = predicates.get(p).test(n);
+			}
+			return results[p];
+		}
+
+		/**
+		 * Combines with the scan of the following range.
+		 */
+		void combine(Scan following) {
+			for (int q = 0; q < best.length; q++) {
+				TreeNode<?, S> n = following.best[q];
+				if (n != null && distinctQueries.get(q).precedes(n, best[q])) {
+					best[q] = n;
+				}
+			}
+		}
+
+	}
+
+}
@@ -1,6 +1,6 @@
 package maciek.tree;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -96,7 +96,7 @@ public class TreeNodeRange<N extends TreeNode<N, S>, S extends TreeNodeSemantics
 	 * All nodes within the range.
 	 */
 	public List<N> nodes() {
-		List<N> list = new LinkedList<>();
+		List<N> list = new ArrayList<>(Math.max(length, 0));
 		for (N n = first; list.size() < length; n = n.right()) {
 			list.add(n);
 		}
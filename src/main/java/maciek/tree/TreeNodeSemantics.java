@@ -6,7 +6,7 @@ package maciek.tree;
  * <p>
  * In its simplest a node semantics may be an enum or single value or it may be complex object which is aware of its tree relations.
  * <p>
- * Semantics is immutable and always copy on get and set.
+ * Semantics is immutable and copied on get and set, unless {@link #isShareable() shareable}.
  */
 public interface TreeNodeSemantics<S extends TreeNodeSemantics<S>> {
 
@@ -15,4 +15,12 @@ public interface TreeNodeSemantics<S extends TreeNodeSemantics<S>> {
 	 */
 	S copy(TreeNode<?, S> newNode);
 
+	/**
+	 * Whether the semantics doesn't depend on the node it belongs to, so the same instance can be shared by the nodes
+	 * of any trees instead of being copied.
+	 */
+	default boolean isShareable() {
+		return false;
+	}
+
 }
@@ -0,0 +1,217 @@
+package maciek.tree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Spliterator over a subtree nodes in pre-order.
+ * <p>
+ * Holds the pending parts of the subtree in encounter order: single nodes, whole subtrees and ranges of sibling
+ * subtrees. Splits on the subtree boundaries, handing over the leading parts, so the split parts can be traversed
+ * independently. A sequential traversal keeps O(depth) pending parts.
+ */
+class TreeNodeSpliterator<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> implements Spliterator<N> {
+
+	/**
+	 * The nodes which subtrees are traversed, the rejected nodes and their descendants are skipped.
+	 */
+	private final Predicate<? super N> subtreeFilter;
+
+	/**
+	 * The minimal depth of the reported nodes, relative to the traversed subtree root.
+	 */
+	private final int minDepth;
+
+	/**
+	 * The maximal depth of the reported nodes, relative to the traversed subtree root.
+	 */
+	private final int maxDepth;
+
+	/**
+	 * The pending parts, the next one first.
+	 */
+	private final Deque<Part<N>> parts;
+
+	/**
+	 * The estimated number of remaining nodes, halved on split.
+	 */
+	private long estimatedSize;
+
+	/**
+	 * Creates the spliterator over all the subtree nodes.
+	 */
+	TreeNodeSpliterator(N subtreeRoot) {
+		this(subtreeRoot, n -> true, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates the spliterator over the subtree nodes within the depth range, the subtrees of nodes rejected by the
+	 * filter skipped.
+	 */
+	TreeNodeSpliterator(N subtreeRoot, Predicate<? super N> subtreeFilter, int minDepth, int maxDepth) {
+		this(subtreeFilter, minDepth, maxDepth, new ArrayDeque<>(), Long.MAX_VALUE);
+		if (maxDepth >= 0 && subtreeFilter.test(subtreeRoot)) {
+			parts.add(Part.subtree(subtreeRoot, 0));
+		}
+	}
+
+	private TreeNodeSpliterator(Predicate<? super N> subtreeFilter, int minDepth, int maxDepth, Deque<Part<N>> parts,
+			long estimatedSize) {
+		this.subtreeFilter = subtreeFilter;
+		this.minDepth = minDepth;
+		this.maxDepth = maxDepth;
+		this.parts = parts;
+		this.estimatedSize = estimatedSize;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super N> action) {
+		while (!parts.isEmpty()) {
+			Part<N> part = parts.peekFirst();
+
+			N node;
+			int depth;
+			if (part.type == Part.RANGE) {
+				node = part.node.child(part.from++);
+				depth = part.depth;
+				if (part.from == part.to) {
+					parts.pollFirst();
+				}
+				if (!subtreeFilter.test(node)) {
+					continue;
+				}
+				expand(node, depth);
+			} else {
+				parts.pollFirst();
+				node = part.node;
+				depth = part.depth;
+				if (part.type == Part.SUBTREE) {
+					expand(node, depth);
+				}
+			}
+
+			if (depth >= minDepth) {
+				action.accept(node);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<N> trySplit() {
+
+		if (parts.size() == 1) {
+			Part<N> part = parts.pollFirst();
+			if (part.type == Part.SUBTREE && part.depth < maxDepth && part.node.childCount() > 0) {
+				parts.add(Part.node(part.node, part.depth));
+				parts.add(Part.range(part.node, part.depth + 1, 0, part.node.childCount()));
+			} else if (part.type == Part.RANGE && part.to - part.from > 1) {
+				int mid = (part.from + part.to) >>> 1;
+				parts.add(Part.range(part.node, part.depth, part.from, mid));
+				parts.add(Part.range(part.node, part.depth, mid, part.to));
+			} else {
+				parts.add(part);
+				return null;
+			}
+		}
+		if (parts.size() < 2) {
+			return null;
+		}
+
+		Deque<Part<N>> prefix = new ArrayDeque<>();
+		for (int i = parts.size() / 2; i > 0; i--) {
+			prefix.add(parts.pollFirst());
+		}
+
+		estimatedSize >>>= 1;
+		return new TreeNodeSpliterator<>(subtreeFilter, minDepth, maxDepth, prefix, estimatedSize);
+	}
+
+	@Override
+	public long estimateSize() {
+		return parts.isEmpty() ? 0 : estimatedSize;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+	/**
+	 * Adds the node children as the next part, if within the depth range.
+	 */
+	private void expand(N node, int depth) {
+		if (depth < maxDepth && node.childCount() > 0) {
+			parts.addFirst(Part.range(node, depth + 1, 0, node.childCount()));
+		}
+	}
+
+	/**
+	 * A pending part of the traversed subtree.
+	 */
+	private static final class Part<N> {
+
+		/**
+		 * The single node.
+		 */
+		static final int NODE = 0;
+
+		/**
+		 * The node and its descendants.
+		 */
+		static final int SUBTREE = 1;
+
+		/**
+		 * The subtrees of the node children in the index range.
+		 */
+		static final int RANGE = 2;
+
+		final N node;
+
+		final int depth;
+
+		/**
+		 * The next child index of the range, advanced during the traversal.
+		 */
+		int from;
+
+		final int to;
+
+		final int type;
+
+		private Part(N node, int depth, int from, int to, int type) {
+			this.node = node;
+			this.depth = depth;
+			this.from = from;
+			this.to = to;
+			this.type = type;
+		}
+
+		/**
+		 * The single node part.
+		 */
+		static <N> Part<N> node(N node, int depth) {
+			return new Part<>(node, depth, 0, 0, NODE);
+		}
+
+		/**
+		 * The node and its descendants part.
+		 */
+		static <N> Part<N> subtree(N node, int depth) {
+			return new Part<>(node, depth, 0, 0, SUBTREE);
+		}
+
+		/**
+		 * The range of the node children subtrees part, the depth being the children depth.
+		 */
+		static <N> Part<N> range(N node, int depth, int from, int to) {
+			return new Part<>(node, depth, from, to, RANGE);
+		}
+
+	}
+
+}
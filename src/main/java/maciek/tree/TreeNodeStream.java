@@ -1,16 +1,216 @@
 package maciek.tree;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * A stream of nodes of the tree.
  * <p>
  * Enables declarative type implementation of tree transformation.
- * 
+ * <p>
+ * The nodes are streamed lazily in pre-order. The structural operations, {@link #subtreePrune(Predicate)} and
+ * {@link #depthRange(int, int)}, restrict the traversal itself, so they apply regardless of their position in the
+ * pipeline. The other intermediate operations apply to the streamed nodes in the order of invocation.
+ * <p>
+ * A parallel stream splits the traversal on the subtree boundaries.
+ *
  * @see {@link java.util.stream.Stream}
  */
 public class TreeNodeStream<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> {
-	
-	TreeNodeStream<N, S> filter(Predicate<N> predicate);
-	
-	TreeNodeStream<N, S> filter(Predicate<N> predicate);
+
+	/**
+	 * The root of the streamed subtree.
+	 */
+	private final N subtreeRoot;
+
+	/**
+	 * The nodes which subtrees are streamed.
+	 */
+	private final Predicate<? super N> subtreeFilter;
+
+	/**
+	 * The minimal depth of the streamed nodes, relative to the subtree root.
+	 */
+	private final int minDepth;
+
+	/**
+	 * The maximal depth of the streamed nodes, relative to the subtree root.
+	 */
+	private final int maxDepth;
+
+	/**
+	 * The intermediate operations applied to the streamed nodes.
+	 */
+	private final Function<Stream<N>, Stream<N>> operations;
+
+	/**
+	 * Whether the stream is parallel.
+	 */
+	private final boolean parallel;
+
+	private TreeNodeStream(N subtreeRoot, Predicate<? super N> subtreeFilter, int minDepth, int maxDepth,
+			Function<Stream<N>, Stream<N>> operations, boolean parallel) {
+		this.subtreeRoot = subtreeRoot;
+		this.subtreeFilter = subtreeFilter;
+		this.minDepth = minDepth;
+		this.maxDepth = maxDepth;
+		this.operations = operations;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Creates the sequential stream of the subtree nodes.
+	 */
+	public static <N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> TreeNodeStream<N, S> of(N subtreeRoot) {
+		return new TreeNodeStream<>(subtreeRoot, n -> true, 0, Integer.MAX_VALUE, Function.identity(), false);
+	}
+
+	// intermediate operations
+
+	/**
+	 * Streams the nodes matching the predicate.
+	 */
+	public TreeNodeStream<N, S> filter(Predicate<? super N> predicate) {
+		return then(s -> s.filter(predicate));
+	}
+
+	/**
+	 * Streams only the subtrees of the nodes matching the predicate.
+	 * <p>
+	 * The rejected nodes and their descendants are not visited.
+	 */
+	public TreeNodeStream<N, S> subtreePrune(Predicate<? super N> predicate) {
+		Predicate<? super N> prev = subtreeFilter;
+		Predicate<N> combined = n -> prev.test(n) && predicate.test(n);
+		return new TreeNodeStream<>(subtreeRoot, combined, minDepth, maxDepth, operations, parallel);
+	}
+
+	/**
+	 * Streams only the nodes within the depth range, bounds included.
+	 * <p>
+	 * The depth is relative to the streamed subtree root, so for a tree stream it is the node depth. The nodes deeper
+	 * than the range are not visited.
+	 */
+	public TreeNodeStream<N, S> depthRange(int minDepth, int maxDepth) {
+		return new TreeNodeStream<>(subtreeRoot, subtreeFilter, Math.max(this.minDepth, minDepth),
+				Math.min(this.maxDepth, maxDepth), operations, parallel);
+	}
+
+	/**
+	 * Streams no more than the given number of nodes.
+	 */
+	public TreeNodeStream<N, S> limit(long maxSize) {
+		return then(s -> s.limit(maxSize));
+	}
+
+	/**
+	 * Maps the streamed nodes, leaving the tree stream.
+	 */
+	public <R> Stream<R> map(Function<? super N, ? extends R> mapper) {
+		return stream().map(mapper);
+	}
+
+	/**
+	 * The parallel equivalent of this stream.
+	 */
+	public TreeNodeStream<N, S> parallel() {
+		return new TreeNodeStream<>(subtreeRoot, subtreeFilter, minDepth, maxDepth, operations, true);
+	}
+
+	/**
+	 * The sequential equivalent of this stream.
+	 */
+	public TreeNodeStream<N, S> sequential() {
+		return new TreeNodeStream<>(subtreeRoot, subtreeFilter, minDepth, maxDepth, operations, false);
+	}
+
+	/**
+	 * The streamed nodes as the standard stream.
+	 */
+	public Stream<N> stream() {
+		TreeNodeSpliterator<N, S> spliterator = new TreeNodeSpliterator<>(subtreeRoot, subtreeFilter, minDepth, maxDepth);
+		return operations.apply(StreamSupport.stream(spliterator, parallel));
+	}
+
+	// terminal operations
+
+	/**
+	 * Performs the action for each streamed node.
+	 * <p>
+	 * For the parallel stream the encounter order is not respected.
+	 */
+	public void forEach(Consumer<? super N> action) {
+		stream().forEach(action);
+	}
+
+	/**
+	 * The streamed nodes in pre-order.
+	 */
+	public List<N> toList() {
+		return stream().collect(Collectors.toList());
+	}
+
+	/**
+	 * The number of the streamed nodes.
+	 */
+	public long count() {
+		return stream().count();
+	}
+
+	/**
+	 * The first streamed node in pre-order.
+	 */
+	public Optional<N> findFirst() {
+		return stream().findFirst();
+	}
+
+	/**
+	 * Any of the streamed nodes.
+	 */
+	public Optional<N> findAny() {
+		return stream().findAny();
+	}
+
+	/**
+	 * Whether any of the streamed nodes matches the predicate.
+	 */
+	public boolean anyMatch(Predicate<? super N> predicate) {
+		return stream().anyMatch(predicate);
+	}
+
+	/**
+	 * Whether all the streamed nodes match the predicate.
+	 */
+	public boolean allMatch(Predicate<? super N> predicate) {
+		return stream().allMatch(predicate);
+	}
+
+	/**
+	 * Whether none of the streamed nodes matches the predicate.
+	 */
+	public boolean noneMatch(Predicate<? super N> predicate) {
+		return stream().noneMatch(predicate);
+	}
+
+	/**
+	 * Collects the streamed nodes.
+	 */
+	public <R, A> R collect(Collector<? super N, A, R> collector) {
+		return stream().collect(collector);
+	}
+
+	/**
+	 * Appends the intermediate operation.
+	 */
+	private TreeNodeStream<N, S> then(Function<Stream<N>, Stream<N>> operation) {
+		return new TreeNodeStream<>(subtreeRoot, subtreeFilter, minDepth, maxDepth, operations.andThen(operation), parallel);
+	}
 
 }
@@ -0,0 +1,457 @@
+package maciek.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A structural pattern over the tree nodes, compiled from an XPath-like selector and matched in one pass.
+ * <p>
+ * The selector is a sequence of steps separated by the axes:
+ * <ul>
+ * <li>{@code a/b} - b is a child of a,
+ * <li>{@code a//b} - b is a descendant of a,
+ * <li>{@code a + b} - b is the next sibling of a,
+ * <li>{@code a ~ b} - b is a following sibling of a.
+ * </ul>
+ * The selector starting with {@code /} matches its first step at the root only, otherwise anywhere. Each step is
+ * either a name, resolved to a semantics predicate when compiled, or {@code *} for any node, followed by the
+ * predicates in brackets:
+ * <ul>
+ * <li>{@code [3]} - the third child of its parent, the root being the first one,
+ * <li>{@code [last()]} - the last child of its parent,
+ * <li>{@code [depth<=2]} - the depth compared with {@code = != < <= > >=},
+ * <li>{@code [name]} - the semantics fulfilling another named predicate.
+ * </ul>
+ * For example {@code /module//function[depth<=3]/param[1] ~ param} selects the non-first parameters of the functions
+ * nested at most three levels deep in the root module.
+ * <p>
+ * The compiled selector is an automaton which state is the set of the steps matched by the node, its ancestors and
+ * its preceding siblings. The nodes are visited in pre-order, each once, and the subtrees in which no step can be
+ * matched any more are skipped. The depth is relative to the root of the selected subtree. Up to 64 steps. Immutable
+ * and thread safe.
+ */
+public final class TreeSelector<S extends TreeNodeSemantics<S>> {
+
+	/**
+	 * The maximal number of steps, the size of the state bit set.
+	 */
+	private static final int MAX_STEPS = Long.SIZE;
+
+	private final String source;
+
+	private final Step<S>[] steps;
+
+	/**
+	 * The steps which previous step is matched by the parent, by the ancestor, by the previous sibling and by a
+	 * preceding sibling, shifted to the previous step bits.
+	 */
+	private final long childAxis;
+
+	private final long descendantAxis;
+
+	private final long nextSiblingAxis;
+
+	private final long siblingAxis;
+
+	/**
+	 * The bit of the last step.
+	 */
+	private final long last;
+
+	/**
+	 * The maximal depth at which the first step can be matched.
+	 */
+	private final int firstStepMaxDepth;
+
+	private TreeSelector(String source, List<Step<S>> steps, List<Character> axes, boolean anchored) {
+		this.source = source;
+		@SuppressWarnings("unchecked")
+		Step<S>[] array = steps.toArray(new Step[steps.size()]);
+		this.steps = array;
+		long child = 0;
+		long descendant = 0;
+		long nextSibling = 0;
+		long sibling = 0;
+		for (int i = 0; i < axes.size(); i++) {
+			long bit = 1L << i;
+			switch (axes.get(i)) {
+			case '/':
+				child |= bit;
+				break;
+			case 'd':
+				descendant |= bit;
+				break;
+			case '+':
+				nextSibling |= bit;
+				break;
+			default:
+				sibling |= bit;
+			}
+		}
+		this.childAxis = child;
+		this.descendantAxis = descendant;
+		this.nextSiblingAxis = nextSibling;
+		this.siblingAxis = sibling;
+		this.last = 1L << (array.length - 1);
+		this.firstStepMaxDepth = anchored ? 0 : array[0].maxDepth;
+	}
+
+	/**
+	 * Compiles the selector.
+	 *
+	 * @param names resolves the names used in the selector to the semantics predicates, null for unknown name
+	 * @throws IllegalArgumentException if the selector is malformed or uses an unknown name
+	 */
+	public static <S extends TreeNodeSemantics<S>> TreeSelector<S> compile(String selector,
+			Function<String, ? extends Predicate<? super S>> names) {
+		return new Parser<>(selector, names).parse();
+	}
+
+	/**
+	 * The nodes of the subtree matching the selector, in pre-order.
+	 */
+	public <N extends TreeNode<N, S>> List<N> select(N subtreeRoot) {
+		List<N> selected = new ArrayList<>();
+
+		// the path from the subtree root to the current node, the node states and the states of their children
+		@SuppressWarnings("unchecked")
+		N[] nodes = (N[]) new TreeNode[16];
+		int[] next = new int[16];
+		long[] matched = new long[16];
+		long[] ancestorMatched = new long[16];
+		long[] previousMatched = new long[16];
+		long[] precedingMatched = new long[16];
+
+		long m = match(firstStepMaxDepth >= 0 ? 1 : 0, subtreeRoot, 0, 1, 0);
+		if ((m & last) != 0) {
+			selected.add(subtreeRoot);
+		}
+		if (isPruned(0, m, m)) {
+			return selected;
+		}
+		nodes[0] = subtreeRoot;
+		matched[0] = m;
+		ancestorMatched[0] = m & descendantAxis;
+		int depth = 1;
+
+		while (depth > 0) {
+			int d = depth - 1;
+			N n = nodes[d];
+			int i = next[d]++;
+			int count = n.childCount();
+			if (i < count) {
+				N child = n.child(i);
+				long candidates = ((matched[d] & childAxis) | (ancestorMatched[d] & descendantAxis)
+						| (previousMatched[d] & nextSiblingAxis) | (precedingMatched[d] & siblingAxis)) << 1;
+				if (d + 1 <= firstStepMaxDepth) {
+					candidates |= 1;
+				}
+				m = match(candidates, child, i, count, d + 1);
+				if ((m & last) != 0) {
+					selected.add(child);
+				}
+				previousMatched[d] = m;
+				precedingMatched[d] |= m;
+				long childAncestorMatched = ancestorMatched[d] | (m & descendantAxis);
+				if (isPruned(depth, m, childAncestorMatched)) {
+					continue;
+				}
+
+				if (depth == nodes.length) {
+					nodes = Arrays.copyOf(nodes, depth * 2);
+					next = Arrays.copyOf(next, depth * 2);
+					matched = Arrays.copyOf(matched, depth * 2);
+					ancestorMatched = Arrays.copyOf(ancestorMatched, depth * 2);
+					previousMatched = Arrays.copyOf(previousMatched, depth * 2);
+					precedingMatched = Arrays.copyOf(precedingMatched, depth * 2);
+				}
+				nodes[depth] = child;
+				next[depth] = 0;
+				matched[depth] = m;
+				ancestorMatched[depth] = childAncestorMatched;
+				previousMatched[depth] = 0;
+				precedingMatched[depth] = 0;
+				depth++;
+			} else {
+				nodes[--depth] = null;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * The nodes of the tree matching the selector, in pre-order.
+	 */
+	public <N extends TreeNode<N, S>> List<N> select(Tree<?, N, S> tree) {
+		return select(tree.root());
+	}
+
+	/**
+	 * The first node of the tree in pre-order matching the selector, null if none.
+	 */
+	public <N extends TreeNode<N, S>> N first(Tree<?, N, S> tree) {
+		List<N> selected = select(tree.root());
+		return selected.isEmpty() ? null : selected.get(0);
+	}
+
+	/**
+	 * Whether no step can be matched in the node subtree below the node: the first step is too shallow and no
+	 * following step continues the node or its ancestors matches.
+	 */
+	private boolean isPruned(int depth, long matched, long ancestorMatched) {
+		return depth + 1 > firstStepMaxDepth && ((matched & childAxis) | (ancestorMatched & descendantAxis)) == 0;
+	}
+
+	/**
+	 * The steps matched by the node, of the candidate steps.
+	 *
+	 * @param childIdx the node index in the parent children, 0 for the root
+	 * @param childCount the number of the parent children, 1 for the root
+	 */
+	private long match(long candidates, TreeNode<?, S> node, int childIdx, int childCount, int depth) {
+		long m = 0;
+		S semantics = null;
+		for (long c = candidates; c != 0; c &= c - 1) {
+			int j = Long.numberOfTrailingZeros(c);
+			Step<S> step = steps[j];
+			if (step.matchesPosition(childIdx, childCount) && step.depth.test(depth)) {
+				if (step.semantics != null && semantics == null) {
+					semantics = node.semantics();
+				}
+				if (step.semantics == null || step.semantics.test(semantics)) {
+					m |= 1L << j;
+				}
+			}
+		}
+		return m;
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/**
+	 * A selector step: the node test.
+	 */
+	private static final class Step<S> {
+
+		/**
+		 * The semantics predicate, null for any node.
+		 */
+		Predicate<? super S> semantics;
+
+		/**
+		 * The 1-based position among the siblings, 0 for any, -1 for the last one.
+		 */
+		int position;
+
+		IntPredicate depth = d -> true;
+
+		/**
+		 * The maximal depth allowed by the depth predicates.
+		 */
+		int maxDepth = Integer.MAX_VALUE;
+
+		boolean matchesPosition(int childIdx, int childCount) {
+			return position == 0 || (position < 0 ? childIdx == childCount - 1 : childIdx == position - 1);
+		}
+
+		void and(Predicate<? super S> predicate) {
+			if (semantics == null) {
+				semantics = predicate;
+			} else {
+				Predicate<? super S> p = semantics;
+				semantics = s -> p.test(s) && predicate.test(s);
+			}
+		}
+
+	}
+
+	/**
+	 * The selector parser.
+	 */
+	private static final class Parser<S extends TreeNodeSemantics<S>> {
+
+		private final String source;
+
+		private final Function<String, ? extends Predicate<? super S>> names;
+
+		private int pos;
+
+		Parser(String source, Function<String, ? extends Predicate<? super S>> names) {
+			this.source = source;
+			this.names = names;
+		}
+
+		TreeSelector<S> parse() {
+			List<Step<S>> steps = new ArrayList<>();
+			// the axis before each step but the first one, 'd' for the descendant axis
+			List<Character> axes = new ArrayList<>();
+
+			skipSpaces();
+			boolean anchored = false;
+			if (accept("//")) {
+				anchored = false;
+			} else if (accept("/")) {
+				anchored = true;
+			}
+			steps.add(step());
+			while (true) {
+				skipSpaces();
+				if (pos == source.length()) {
+					break;
+				}
+				if (accept("//")) {
+					axes.add('d');
+				} else if (accept("/")) {
+					axes.add('/');
+				} else if (accept("+")) {
+					axes.add('+');
+				} else if (accept("~")) {
+					axes.add('~');
+				} else {
+					throw error("axis expected");
+				}
+				if (steps.size() == MAX_STEPS) {
+					throw error("too many steps");
+				}
+				skipSpaces();
+				steps.add(step());
+			}
+			return new TreeSelector<>(source, steps, axes, anchored);
+		}
+
+		private Step<S> step() {
+			Step<S> step = new Step<>();
+			if (!accept("*")) {
+				step.and(predicate(name()));
+			}
+			while (accept("[")) {
+				skipSpaces();
+				if (pos < source.length() && Character.isDigit(source.charAt(pos))) {
+					step.position = number();
+					if (step.position < 1) {
+						throw error("position must be positive");
+					}
+				} else if (accept("last()")) {
+					step.position = -1;
+				} else {
+					String name = name();
+					skipSpaces();
+					if (name.equals("depth") && pos < source.length() && "=!<>".indexOf(source.charAt(pos)) >= 0) {
+						depth(step);
+					} else {
+						step.and(predicate(name));
+					}
+				}
+				skipSpaces();
+				if (!accept("]")) {
+					throw error("] expected");
+				}
+			}
+			return step;
+		}
+
+		private void depth(Step<S> step) {
+			String op;
+			if (accept("<=") || accept(">=") || accept("!=")) {
+				op = source.substring(pos - 2, pos);
+			} else if (accept("<") || accept(">") || accept("=")) {
+				op = source.substring(pos - 1, pos);
+			} else {
+				throw error("comparison expected");
+			}
+			skipSpaces();
+			int n = number();
+			IntPredicate test;
+			int max = Integer.MAX_VALUE;
+			switch (op) {
+			case "=":
+				test = d -> d == n;
+				max = n;
+				break;
+			case "!=":
+				test = d -> d != n;
+				break;
+			case "<":
+				test = d -> d < n;
+				max = n - 1;
+				break;
+			case "<=":
+				test = d -> d <= n;
+				max = n;
+				break;
+			case ">":
+				test = d -> d > n;
+				break;
+			default:
+				test = d -> d >= n;
+			}
+			step.depth = step.depth.and(test);
+			step.maxDepth = Math.min(step.maxDepth, max);
+		}
+
+		private Predicate<? super S> predicate(String name) {
+			Predicate<? super S> predicate = names.apply(name);
+			if (predicate == null) {
+				throw new IllegalArgumentException("Unknown name '" + name + "' in selector: " + source);
+			}
+			return predicate;
+		}
+
+		private String name() {
+			int start = pos;
+			while (pos < source.length() && isNameChar(source.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("name expected");
+			}
+			return source.substring(start, pos);
+		}
+
+		private int number() {
+			int start = pos;
+			while (pos < source.length() && Character.isDigit(source.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("number expected");
+			}
+			try {
+				return Integer.parseInt(source.substring(start, pos));
+			} catch (NumberFormatException e) {
+				throw error("number too large");
+			}
+		}
+
+		private static boolean isNameChar(char c) {
+			return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':';
+		}
+
+		private boolean accept(String token) {
+			if (source.startsWith(token, pos)) {
+				pos += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void skipSpaces() {
+			while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException("Malformed selector at " + pos + ", " + message + ": " + source);
+		}
+
+	}
+
+}
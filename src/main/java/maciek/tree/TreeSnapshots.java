@@ -1,68 +1,292 @@
 package maciek.tree;
 
+import java.lang.ref.SoftReference;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import maciek.tree.ImmutableTreeNode.Body;
 
 /**
  * The tree structure changes history.
  * <p>
  * A tree snapshot is taken before each transformation.
+ * <p>
+ * Only the most recent snapshot and the checkpoints, every few versions, are kept as full trees. The other versions
+ * are kept as the structural deltas from the next more recent version and are rebuilt on demand, the recently
+ * rebuilt ones being cached. The history is persistent, the snapshots collections derived from each other share the
+ * versions.
+ * <p>
+ * The {@link SnapshotRetentionPolicy} decides which versions are retained when a version is added, the other ones
+ * are evicted. The evicted versions may still be held through soft references, until the memory is needed.
  */
 public class TreeSnapshots<S extends TreeNodeSemantics<S>> implements Iterable<ImmutableTree<S>> {
 
-	private List<ImmutableTree<S>> snapshots;
+	/**
+	 * The default number of versions between the full tree checkpoints.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+
+	/**
+	 * The number of the rebuilt versions cached.
+	 */
+	private static final int REBUILT_CACHE_SIZE = 8;
+
+	/**
+	 * The most recent version, null if empty.
+	 */
+	private final Version<S> recent;
+
+	/**
+	 * The number of retained versions.
+	 */
+	private final int length;
+
+	/**
+	 * The number of nodes kept by the retained versions.
+	 */
+	private final long nodes;
+
+	/**
+	 * The evicted versions held through soft references, null if none.
+	 */
+	private final Evicted<S> evicted;
+
+	/**
+	 * The number of versions evicted so far.
+	 */
+	private final long evictedCount;
 
 	/**
-	 * Creates empty snapshot collection.
+	 * The history settings.
 	 */
+	private final Settings<S> settings;
+
+	/**
+	 * The empty snapshot collection retaining all the versions.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final TreeSnapshots EMPTY = new TreeSnapshots<>(List.of());
+
+	/**
+	 * Empty snapshot collection.
+	 */
+	@SuppressWarnings("unchecked")
 	public static final <S extends TreeNodeSemantics<S>> TreeSnapshots<S> empty() {
-		return new TreeSnapshots<>(List.of());
+		return EMPTY;
 	}
 
 	/**
 	 * Public constructor.
 	 * <p>
-	 * Copies the list on set.
+	 * Copies the list on set. Retains all the versions.
+	 *
+	 * @param list the snapshots, the recent ones before the older ones
 	 */
 	public TreeSnapshots(List<ImmutableTree<S>> list) {
-		this.snapshots = new LinkedList<>(list);
+		Settings<S> settings = new Settings<>(SnapshotRetentionPolicy.all(), DEFAULT_CHECKPOINT_INTERVAL, false,
+				Clock.systemUTC(), null);
+		TreeSnapshots<S> snapshots = new TreeSnapshots<S>(null, 0, 0, null, 0, settings);
+		for (int i = list.size() - 1; i >= 0; i--) {
+			snapshots = snapshots.add(list.get(i));
+		}
+		this.recent = snapshots.recent;
+		this.length = snapshots.length;
+		this.nodes = snapshots.nodes;
+		this.evicted = null;
+		this.evictedCount = 0;
+		this.settings = snapshots.settings;
+	}
+
+	private TreeSnapshots(Version<S> recent, int length, long nodes, Evicted<S> evicted, long evictedCount,
+			Settings<S> settings) {
+		this.recent = recent;
+		this.length = length;
+		this.nodes = nodes;
+		this.evicted = evicted;
+		this.evictedCount = evictedCount;
+		this.settings = settings;
+	}
+
+	/**
+	 * The snapshots retaining the versions according to the policy.
+	 * <p>
+	 * Applies the policy to the current versions as well as to the versions added later.
+	 */
+	public TreeSnapshots<S> withRetention(SnapshotRetentionPolicy retention) {
+		Settings<S> s = new Settings<>(retention, settings.checkpointInterval, settings.softEviction, settings.clock,
+				settings.rebuilt);
+		return new TreeSnapshots<>(recent, length, nodes, evicted, evictedCount, s).retain();
 	}
-	
+
 	/**
-	 * Copies the tree snapshots and adds the new one.
+	 * The snapshots holding the evicted versions through soft references, or dropping them at once.
+	 * <p>
+	 * Applies to the versions evicted later.
+	 */
+	public TreeSnapshots<S> withSoftEviction(boolean softEviction) {
+		Settings<S> s = new Settings<>(settings.retention, settings.checkpointInterval, softEviction, settings.clock,
+				settings.rebuilt);
+		return new TreeSnapshots<>(recent, length, nodes, softEviction ? evicted : null, evictedCount, s);
+	}
+
+	/**
+	 * The snapshots keeping a full tree every given number of versions.
+	 * <p>
+	 * Bounds the number of deltas applied to rebuild a version. Applies to the versions added later.
+	 */
+	public TreeSnapshots<S> withCheckpointInterval(int checkpointInterval) {
+		Settings<S> s = new Settings<>(settings.retention, Math.max(1, checkpointInterval), settings.softEviction,
+				settings.clock, settings.rebuilt);
+		return new TreeSnapshots<>(recent, length, nodes, evicted, evictedCount, s);
+	}
+
+	/**
+	 * The snapshots timestamping the versions added later with the clock.
+	 */
+	public TreeSnapshots<S> withClock(Clock clock) {
+		Settings<S> s = new Settings<>(settings.retention, settings.checkpointInterval, settings.softEviction, clock,
+				settings.rebuilt);
+		return new TreeSnapshots<>(recent, length, nodes, evicted, evictedCount, s);
+	}
+
+	/**
+	 * Copies the tree snapshots and adds the new one, evicting the versions not retained by the policy.
 	 */
 	public TreeSnapshots<S> copyAndTakeSanpshot(ImmutableTree<S> snapshot) {
-		
-		if (!snapshots.isEmpty() && snapshots.get(0).equals(snapshot)) {
+
+		if (recent != null && recent.tree.equals(snapshot)) {
 			return this;
 		}
-		
-		LinkedList<ImmutableTree<S>> listCopy = new LinkedList<>(snapshots);
-		listCopy.add(0, snapshot);
-		
-		return new TreeSnapshots<>(listCopy);
+
+		return add(snapshot).retain();
 	}
 
 	/**
-	 * Copies the tree snapshots and adds the new one.
+	 * Copies the tree snapshots and adds the new one, evicting the versions not retained by the policy.
 	 */
 	public TreeSnapshots<S> copyAndTakeSanpshot(Tree<?, ?, S> snapshot) {
-		return copyAndTakeSanpshot(snapshot.immutable());
+		if (snapshot instanceof ImmutableTree) {
+			@SuppressWarnings("unchecked")
+			ImmutableTree<S> immutable = (ImmutableTree<S>) snapshot;
+			return copyAndTakeSanpshot(immutable);
+		}
+		// the snapshot tree may be under construction, without history
+		return copyAndTakeSanpshot(ImmutableTree.<S>mapper().map(snapshot.root()));
 	}
 
 	/**
 	 * Retrieves the most recent snapshot.
 	 */
 	public ImmutableTree<S> getRecent() {
-		return snapshots.get(0);
+		return recent.tree;
 	}
 
 	/**
-	 * Gets the copy all the snapshots. The recent one are before the later one.
+	 * Retrieves the retained snapshot given number of retained versions ago, rebuilding it if necessary.
+	 *
+	 * @param versionsAgo 0 for the most recent snapshot
+	 */
+	public ImmutableTree<S> get(int versionsAgo) {
+		if (versionsAgo < 0 || versionsAgo >= size()) {
+			throw new IndexOutOfBoundsException(versionsAgo);
+		}
+
+		// the most recent full or cached version before the requested one
+		Version<S> base = recent;
+		ImmutableTree<S> baseTree = recent.tree;
+		int baseIdx = 0;
+		Version<S> v = recent;
+		for (int i = 0; i <= versionsAgo; i++, v = v.older) {
+			ImmutableTree<S> tree = v.tree != null ? v.tree : cached(v);
+			if (tree != null) {
+				base = v;
+				baseTree = tree;
+				baseIdx = i;
+			}
+		}
+
+		Body<S> body = baseTree.root().body();
+		v = base;
+		for (int i = baseIdx; i < versionsAgo; i++) {
+			v = v.older;
+			body = v.delta.apply(body);
+		}
+		return v == base ? baseTree : cache(v, body);
+	}
+
+	/**
+	 * The number of retained snapshots.
+	 */
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * The number of retained snapshots.
+	 */
+	public int retainedSnapshots() {
+		return length;
+	}
+
+	/**
+	 * The number of nodes kept by the retained snapshots.
+	 * <p>
+	 * The snapshots kept as deltas count only the nodes referenced by the delta.
+	 */
+	public long retainedNodes() {
+		return nodes;
+	}
+
+	/**
+	 * The number of snapshots evicted from the history so far.
+	 */
+	public long evictedSnapshots() {
+		return evictedCount;
+	}
+
+	/**
+	 * The evicted snapshots not reclaimed yet, the recent ones first.
+	 * <p>
+	 * Empty unless the {@link #withSoftEviction(boolean) soft eviction} is on.
+	 */
+	public List<ImmutableTree<S>> evicted() {
+		List<ImmutableTree<S>> all = new ArrayList<>();
+		for (Evicted<S> e = evicted; e != null; e = e.older) {
+			ImmutableTree<S> tree = e.tree.get();
+			if (tree != null) {
+				all.add(tree);
+			}
+		}
+		return Collections.unmodifiableList(all);
+	}
+
+	/**
+	 * Gets the copy all the retained snapshots. The recent one are before the later one.
+	 * <p>
+	 * Rebuilds the versions kept as deltas.
 	 */
 	public List<ImmutableTree<S>> all() {
-		return List.copyOf(snapshots);
+		int size = size();
+		List<ImmutableTree<S>> all = new ArrayList<>(size);
+		Body<S> body = null;
+		Version<S> v = recent;
+		for (int i = 0; i < size; i++, v = v.older) {
+			ImmutableTree<S> tree = v.tree != null ? v.tree : cached(v);
+			if (tree == null) {
+				body = v.delta.apply(body);
+				tree = snapshotTree(body);
+			} else {
+				body = tree.root().body();
+			}
+			all.add(tree);
+		}
+		return Collections.unmodifiableList(all);
 	}
 
 	@Override
@@ -70,4 +294,376 @@ public class TreeSnapshots<S extends TreeNodeSemantics<S>> implements Iterable<I
 		return all().iterator();
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Adds the version, turning the previous recent one into a delta unless it becomes a checkpoint.
+	 */
+	private TreeSnapshots<S> add(ImmutableTree<S> snapshot) {
+		long taken = settings.clock.millis();
+		long size = snapshot.root().body().size();
+
+		if (recent == null) {
+			Version<S> v = new Version<>(snapshot, null, null, 0, 0, taken, size);
+			return new TreeSnapshots<>(v, 1, size, evicted, evictedCount, settings);
+		}
+
+		// the older versions may be deltas from now on, to be rebuilt
+		Settings<S> settings = this.settings.rebuilt != null ? this.settings
+				: new Settings<>(this.settings.retention, this.settings.checkpointInterval, this.settings.softEviction,
+						this.settings.clock, TreeSnapshots.<S>newCache());
+
+		Version<S> older = recent.older;
+		int deltas = older == null || older.tree != null ? 1 : older.deltas + 1;
+
+		Version<S> prev;
+		if (deltas >= settings.checkpointInterval) {
+			// the checkpoint doesn't keep the history of the tree it was taken of
+			prev = recent.with(snapshotTree(recent.tree.root().body()), null, older, 0);
+		} else {
+			TreeDelta<S> delta = TreeDelta.between(snapshot.root().body(), recent.tree.root().body());
+			prev = recent.with(null, delta, older, deltas);
+		}
+
+		Version<S> v = new Version<>(snapshot, null, prev, 0, recent.seq + 1, taken, size);
+		return new TreeSnapshots<>(v, length + 1, nodes - recent.nodes + prev.nodes + size, evicted, evictedCount,
+				settings);
+	}
+
+	/**
+	 * Evicts the versions not retained by the policy.
+	 * <p>
+	 * The retained versions following the evicted ones get the deltas recomputed from the next more recent retained
+	 * version, becoming checkpoints when the run of deltas gets too long.
+	 */
+	private TreeSnapshots<S> retain() {
+		if (recent == null || settings.retention.retainsAll()) {
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		Version<S>[] versions = new Version[length];
+		boolean[] retained = new boolean[length];
+
+		Candidate<S> candidate = new Candidate<>(recent, settings.clock.millis());
+		boolean evicting = false;
+		boolean gap = false;
+		Version<S> v = recent;
+		for (int i = 0; i < length; i++, v = v.older) {
+			versions[i] = v;
+			retained[i] = i == 0 || settings.retention.retains(candidate.of(v));
+			if (retained[i]) {
+				candidate.retain(v);
+				gap |= evicting;
+			} else {
+				evicting = true;
+			}
+		}
+		if (!evicting) {
+			return this;
+		}
+
+		// the bodies are needed only to recompute the deltas or to keep the evicted trees
+		@SuppressWarnings("unchecked")
+		Body<S>[] bodies = gap || settings.softEviction ? new Body[length] : null;
+		if (bodies != null) {
+			for (int i = 0; i < length; i++) {
+				v = versions[i];
+				bodies[i] = v.tree != null ? v.tree.root().body() : v.delta.apply(bodies[i - 1]);
+			}
+		}
+
+		List<Evicted<S>> dropped = new ArrayList<>();
+		int count = 0;
+		long size = 0;
+		Version<S> older = null;
+		for (int i = length - 1; i >= 0; i--) {
+			v = versions[i];
+			if (!retained[i]) {
+				if (bodies != null && settings.softEviction) {
+					ImmutableTree<S> tree = v.tree != null ? v.tree : snapshotTree(bodies[i]);
+					dropped.add(new Evicted<>(new SoftReference<>(tree), v.seq, null));
+				}
+				continue;
+			}
+
+			int newer = i - 1;
+			while (newer >= 0 && !retained[newer]) {
+				newer--;
+			}
+			int deltas = older == null || older.tree != null ? 1 : older.deltas + 1;
+
+			Version<S> copy;
+			if (v.tree != null) {
+				copy = v.with(v.tree, null, older, 0);
+			} else if (deltas >= settings.checkpointInterval && bodies != null) {
+				copy = v.with(snapshotTree(bodies[i]), null, older, 0);
+			} else if (newer == i - 1) {
+				copy = v.with(null, v.delta, older, deltas);
+			} else {
+				copy = v.with(null, TreeDelta.between(bodies[newer], bodies[i]), older, deltas);
+			}
+			older = copy;
+			count++;
+			size += copy.nodes;
+		}
+
+		return new TreeSnapshots<>(older, count, size, evict(dropped), evictedCount + length - count, settings);
+	}
+
+	/**
+	 * The evicted versions list with the newly evicted ones, the reclaimed ones removed.
+	 */
+	private Evicted<S> evict(List<Evicted<S>> dropped) {
+		if (!settings.softEviction) {
+			return null;
+		}
+		for (Evicted<S> e = evicted; e != null; e = e.older) {
+			if (e.tree.get() != null) {
+				dropped.add(e);
+			}
+		}
+		dropped.sort(Comparator.comparingLong(e -> e.seq));
+		Evicted<S> list = null;
+		for (Evicted<S> e : dropped) {
+			list = new Evicted<>(e.tree, e.seq, list);
+		}
+		return list;
+	}
+
+	/**
+	 * The cached rebuilt version.
+	 */
+	private ImmutableTree<S> cached(Version<S> version) {
+		if (settings.rebuilt == null) {
+			return null;
+		}
+		synchronized (settings.rebuilt) {
+			return settings.rebuilt.get(version);
+		}
+	}
+
+	/**
+	 * Caches the rebuilt version.
+	 */
+	private ImmutableTree<S> cache(Version<S> version, Body<S> body) {
+		ImmutableTree<S> tree = snapshotTree(body);
+		if (settings.rebuilt == null) {
+			return tree;
+		}
+		synchronized (settings.rebuilt) {
+			settings.rebuilt.put(version, tree);
+		}
+		return tree;
+	}
+
+	/**
+	 * The snapshot tree, without history of its own.
+	 */
+	private static <S extends TreeNodeSemantics<S>> ImmutableTree<S> snapshotTree(Body<S> body) {
+		return new ImmutableTree<>(new ImmutableTreeNode<>(body), empty());
+	}
+
+	/**
+	 * Creates the cache of the rebuilt versions.
+	 */
+	private static <S extends TreeNodeSemantics<S>> Map<Version<S>, ImmutableTree<S>> newCache() {
+		return new LinkedHashMap<>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Version<S>, ImmutableTree<S>> eldest) {
+				return size() > REBUILT_CACHE_SIZE;
+			}
+
+		};
+	}
+
+	/**
+	 * The history settings, shared by the snapshots collections derived from each other.
+	 */
+	private static final class Settings<S extends TreeNodeSemantics<S>> {
+
+		final SnapshotRetentionPolicy retention;
+
+		/**
+		 * The maximal number of consecutive versions kept as deltas.
+		 */
+		final int checkpointInterval;
+
+		/**
+		 * Whether the evicted versions are held through soft references.
+		 */
+		final boolean softEviction;
+
+		/**
+		 * The clock timestamping the versions.
+		 */
+		final Clock clock;
+
+		/**
+		 * The recently rebuilt versions, null until the history has more than one version.
+		 */
+		final Map<Version<S>, ImmutableTree<S>> rebuilt;
+
+		Settings(SnapshotRetentionPolicy retention, int checkpointInterval, boolean softEviction, Clock clock,
+				Map<Version<S>, ImmutableTree<S>> rebuilt) {
+			this.retention = retention;
+			this.checkpointInterval = checkpointInterval;
+			this.softEviction = softEviction;
+			this.clock = clock;
+			this.rebuilt = rebuilt;
+		}
+
+	}
+
+	/**
+	 * A version in the history, linked to the older one.
+	 * <p>
+	 * Kept either as the full tree or as the delta from the next more recent version.
+	 */
+	private static final class Version<S extends TreeNodeSemantics<S>> {
+
+		/**
+		 * The full tree, null for the delta version.
+		 */
+		final ImmutableTree<S> tree;
+
+		/**
+		 * The delta from the more recent version, null for the full tree version.
+		 */
+		final TreeDelta<S> delta;
+
+		/**
+		 * The older version.
+		 */
+		final Version<S> older;
+
+		/**
+		 * The number of consecutive delta versions up to this one, counting from the older full tree version.
+		 */
+		final int deltas;
+
+		/**
+		 * The sequence number of the version in the tree lineage.
+		 */
+		final long seq;
+
+		/**
+		 * The time the version was taken, in milliseconds.
+		 */
+		final long taken;
+
+		/**
+		 * The number of nodes kept by the version.
+		 */
+		final long nodes;
+
+		Version(ImmutableTree<S> tree, TreeDelta<S> delta, Version<S> older, int deltas, long seq, long taken,
+				long nodes) {
+			this.tree = tree;
+			this.delta = delta;
+			this.older = older;
+			this.deltas = deltas;
+			this.seq = seq;
+			this.taken = taken;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * The same version kept differently.
+		 */
+		Version<S> with(ImmutableTree<S> tree, TreeDelta<S> delta, Version<S> older, int deltas) {
+			long nodes = tree != null ? tree.root().body().size() : delta.nodeCount();
+			return new Version<>(tree, delta, older, deltas, seq, taken, nodes);
+		}
+
+	}
+
+	/**
+	 * An evicted version held through soft reference, linked to the older one.
+	 */
+	private static final class Evicted<S extends TreeNodeSemantics<S>> {
+
+		final SoftReference<ImmutableTree<S>> tree;
+
+		final long seq;
+
+		final Evicted<S> older;
+
+		Evicted(SoftReference<ImmutableTree<S>> tree, long seq, Evicted<S> older) {
+			this.tree = tree;
+			this.seq = seq;
+			this.older = older;
+		}
+
+	}
+
+	/**
+	 * The version offered to the retention policy.
+	 */
+	private static final class Candidate<S extends TreeNodeSemantics<S>> implements SnapshotRetentionPolicy.Candidate {
+
+		private final Version<S> recent;
+
+		private final long now;
+
+		private Version<S> version;
+
+		private int retainedCount;
+
+		private long retainedNodes;
+
+		Candidate(Version<S> recent, long now) {
+			this.recent = recent;
+			this.now = now;
+		}
+
+		/**
+		 * Offers the version.
+		 */
+		Candidate<S> of(Version<S> version) {
+			this.version = version;
+			return this;
+		}
+
+		/**
+		 * Counts the retained version.
+		 */
+		void retain(Version<S> version) {
+			retainedCount++;
+			retainedNodes += version.nodes;
+		}
+
+		@Override
+		public long sequence() {
+			return version.seq;
+		}
+
+		@Override
+		public long versionsAgo() {
+			return recent.seq - version.seq;
+		}
+
+		@Override
+		public long ageMillis() {
+			return now - version.taken;
+		}
+
+		@Override
+		public long nodes() {
+			return version.nodes;
+		}
+
+		@Override
+		public int retainedCount() {
+			return retainedCount;
+		}
+
+		@Override
+		public long retainedNodes() {
+			return retainedNodes;
+		}
+
+	}
+
+}
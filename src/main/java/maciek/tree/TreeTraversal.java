@@ -0,0 +1,216 @@
+package maciek.tree;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Lazy iterators over a subtree nodes.
+ * <p>
+ * The nodes are visited on demand, so an iteration stopped early doesn't visit the remaining nodes. The depth-first
+ * iterators keep a stack of child cursors of the visited node ancestors and use O(depth) memory.
+ */
+public final class TreeTraversal {
+
+	/**
+	 * Utility class.
+	 */
+	private TreeTraversal() {
+	}
+
+	/**
+	 * Iterates the subtree nodes in pre-order, parents before children, the subtree root first.
+	 */
+	public static <N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> Iterator<N> preOrder(N subtreeRoot) {
+		return new PreOrderIterator<>(subtreeRoot);
+	}
+
+	/**
+	 * Iterates the subtree nodes in post-order, children before parents, the subtree root last.
+	 */
+	public static <N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> Iterator<N> postOrder(N subtreeRoot) {
+		return new PostOrderIterator<>(subtreeRoot);
+	}
+
+	/**
+	 * Iterates the subtree nodes level by level, the subtree root first.
+	 * <p>
+	 * Uses memory proportional to the subtree width.
+	 */
+	public static <N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> Iterator<N> levelOrder(N subtreeRoot) {
+		return new LevelOrderIterator<>(subtreeRoot);
+	}
+
+	/**
+	 * The stack of the child cursors, each being a node and its child index.
+	 */
+	static final class CursorStack<N extends TreeNode<N, ?>> {
+
+		private Object[] nodes = new Object[16];
+
+		private int[] idx = new int[16];
+
+		private int size;
+
+		/**
+		 * Pushes the node cursor indicating its child at given index.
+		 */
+		void push(N node, int childIdx) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				idx = Arrays.copyOf(idx, size * 2);
+			}
+			nodes[size] = node;
+			idx[size++] = childIdx;
+		}
+
+		/**
+		 * Removes the top cursor.
+		 */
+		void pop() {
+			nodes[--size] = null;
+		}
+
+		/**
+		 * The top cursor node.
+		 */
+		@SuppressWarnings("unchecked")
+		N node() {
+			return (N) nodes[size - 1];
+		}
+
+		/**
+		 * The top cursor child index.
+		 */
+		int childIdx() {
+			return idx[size - 1];
+		}
+
+		/**
+		 * Moves the top cursor to the next child.
+		 */
+		void advance() {
+			++idx[size - 1];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+	}
+
+	/**
+	 * Pre-order iterator.
+	 * <p>
+	 * The stack holds the ancestors of the next node with the child indexes leading to it.
+	 */
+	private static final class PreOrderIterator<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> implements Iterator<N> {
+
+		private final CursorStack<N> stack = new CursorStack<>();
+
+		private N next;
+
+		PreOrderIterator(N subtreeRoot) {
+			next = subtreeRoot;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public N next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			N n = next;
+
+			if (n.childCount() > 0) {
+				stack.push(n, 0);
+				next = n.child(0);
+				return n;
+			}
+
+			next = null;
+			while (!stack.isEmpty()) {
+				N p = stack.node();
+				int idx = stack.childIdx() + 1;
+				if (idx < p.childCount()) {
+					stack.advance();
+					next = p.child(idx);
+					break;
+				}
+				stack.pop();
+			}
+			return n;
+		}
+
+	}
+
+	/**
+	 * Post-order iterator.
+	 * <p>
+	 * The stack holds the next node ancestors and the node itself with the child indexes to be descended to.
+	 */
+	private static final class PostOrderIterator<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> implements Iterator<N> {
+
+		private final CursorStack<N> stack = new CursorStack<>();
+
+		PostOrderIterator(N subtreeRoot) {
+			stack.push(subtreeRoot, 0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !stack.isEmpty();
+		}
+
+		@Override
+		public N next() {
+			if (stack.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			while (true) {
+				N n = stack.node();
+				int idx = stack.childIdx();
+				if (idx < n.childCount()) {
+					stack.advance();
+					stack.push(n.child(idx), 0);
+				} else {
+					stack.pop();
+					return n;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Level-order iterator.
+	 */
+	private static final class LevelOrderIterator<N extends TreeNode<N, S>, S extends TreeNodeSemantics<S>> implements Iterator<N> {
+
+		private final Queue<N> queue = new ArrayDeque<>();
+
+		LevelOrderIterator(N subtreeRoot) {
+			queue.add(subtreeRoot);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !queue.isEmpty();
+		}
+
+		@Override
+		public N next() {
+			N n = queue.remove();
+			queue.addAll(n.childrenView());
+			return n;
+		}
+
+	}
+
+}
@@ -0,0 +1,256 @@
+package maciek.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress tests of the {@link ConcurrentTree} read and modified by many threads, against the mutable tree guarded by
+ * the read-write lock.
+ */
+public class ConcurrentTreeTest {
+
+	private static final int WRITERS = 4;
+
+	private static final int READERS = 8;
+
+	private static final int MODIFICATIONS = 2_000;
+
+	/**
+	 * The mutable tree guarded by the read-write lock, the baseline.
+	 */
+	private static final class LockedTree {
+
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		private final MutableTree<TestSemantics> tree;
+
+		LockedTree(Tree<?, ?, TestSemantics> tree) {
+			this.tree = tree.mutable();
+		}
+
+		void read() {
+			lock.readLock().lock();
+			try {
+				assertConsistent(tree);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		void apply(TreeModification<TestSemantics> modification) {
+			lock.writeLock().lock();
+			try {
+				modification.transform(tree);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		ImmutableTree<TestSemantics> immutable() {
+			lock.readLock().lock();
+			try {
+				return tree.immutable();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+	}
+
+	/**
+	 * The root with a child owned by each writer, the writer appending and removing its leaves.
+	 */
+	private static ImmutableTree<TestSemantics> initial() {
+		TreeNodeFactory.Mutable<TestSemantics> factory = MutableTree.nodeFactory();
+		MutableTreeNode<TestSemantics> root = factory.createNode(new TestSemantics(-1));
+		for (int w = 0; w < WRITERS; w++) {
+			root.addChild(factory.createNode(new TestSemantics(w)));
+		}
+		return new MutableTree<>(root, TreeSnapshots.empty()).immutable();
+	}
+
+	/**
+	 * Asserts the leaves of each writer are numbered from 0 in order, as the writers keep them in any version.
+	 */
+	private static <N extends TreeNode<N, TestSemantics>> void assertConsistent(Tree<?, N, TestSemantics> tree) {
+		N root = tree.root();
+		assertEquals(WRITERS, root.childCount());
+		for (int w = 0; w < WRITERS; w++) {
+			N owned = root.child(w);
+			assertEquals(w, owned.semantics().value());
+			for (int i = 0; i < owned.childCount(); i++) {
+				assertEquals(i, owned.child(i).semantics().value());
+			}
+		}
+	}
+
+	/**
+	 * Asserts the lazily built caches of the version shared by the readers.
+	 */
+	private static void assertCaches(ImmutableTree<TestSemantics> tree) {
+		ImmutableTreeNode<TestSemantics> root = tree.root();
+		assertEquals(root.descendants().size() + 1, tree.asMap().size());
+		for (int w = 0; w < WRITERS; w++) {
+			ImmutableTreeNode<TestSemantics> owned = root.child(w);
+			if (owned.childCount() > 0) {
+				ImmutableTreeNode<TestSemantics> leaf = owned.child(owned.childCount() - 1);
+				assertSame(root, tree.kthAncestor(leaf, 2));
+				assertSame(root, tree.lca(leaf, root.child((w + 1) % WRITERS)));
+			}
+		}
+	}
+
+	/**
+	 * Appends the leaf numbered by the child count to the writer's node.
+	 */
+	private static TreeModification<TestSemantics> append(int writer) {
+		TreeNodeFactory.Mutable<TestSemantics> factory = MutableTree.nodeFactory();
+		return tree -> {
+			MutableTreeNode<TestSemantics> owned = tree.root().child(writer);
+			owned.addChild(factory.createNode(new TestSemantics(owned.childCount())));
+		};
+	}
+
+	/**
+	 * Removes the last leaf of the writer's node, if any.
+	 */
+	private static TreeModification<TestSemantics> removeLast(int writer) {
+		return tree -> {
+			MutableTreeNode<TestSemantics> owned = tree.root().child(writer);
+			if (owned.childCount() > 0) {
+				owned.removeChild(owned.childCount() - 1);
+			}
+		};
+	}
+
+	private static TreeModification<TestSemantics> failing() {
+		return tree -> {
+			throw new IllegalStateException("failing modification");
+		};
+	}
+
+	@Test
+	public void concurrentReadersAndWriters() throws Exception {
+		ImmutableTree<TestSemantics> initial = initial();
+		ConcurrentTree<TestSemantics> concurrent = new ConcurrentTree<>(initial);
+		LockedTree locked = new LockedTree(initial);
+
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicLong published = new AtomicLong();
+		AtomicLong reads = new AtomicLong();
+		try {
+			List<Future<?>> writers = new ArrayList<>();
+			for (int w = 0; w < WRITERS; w++) {
+				int writer = w;
+				writers.add(executor.submit((Callable<Void>) () -> {
+					Random random = new Random(writer);
+					start.await();
+					for (int i = 0; i < MODIFICATIONS; i++) {
+						int op = random.nextInt(10);
+						if (op == 0) {
+							// the failed modifications are rolled back as a whole
+							try {
+								concurrent.apply(List.of(append(writer), failing()));
+							} catch (IllegalStateException e) {
+								continue;
+							}
+							throw new AssertionError("The failing modification was applied");
+						}
+						TreeModification<TestSemantics> modification = op < 7 ? append(writer) : removeLast(writer);
+						concurrent.apply(modification);
+						locked.apply(modification);
+						published.incrementAndGet();
+					}
+					return null;
+				}));
+			}
+			List<Future<?>> readers = new ArrayList<>();
+			for (int r = 0; r < READERS; r++) {
+				int reader = r;
+				readers.add(executor.submit((Callable<Void>) () -> {
+					start.await();
+					long lastVersion = -1;
+					while (writing.get()) {
+						if (reader % 2 == 0) {
+							long version = concurrent.version();
+							ImmutableTree<TestSemantics> tree = concurrent.get();
+							assertTrue(version >= lastVersion, "The versions are published in order");
+							lastVersion = version;
+							assertConsistent(tree);
+							assertCaches(tree);
+						} else {
+							locked.read();
+						}
+						reads.incrementAndGet();
+					}
+					return null;
+				}));
+			}
+
+			start.countDown();
+			for (Future<?> writer : writers) {
+				writer.get();
+			}
+			writing.set(false);
+			for (Future<?> reader : readers) {
+				reader.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertTrue(reads.get() > 0);
+		assertEquals(published.get(), concurrent.version());
+		assertEquals(locked.immutable(), concurrent.get());
+		assertConsistent(concurrent.get());
+	}
+
+	@Test
+	public void publishedHistory() {
+		ConcurrentTree<TestSemantics> concurrent = new ConcurrentTree<>(initial(),
+				SnapshotRetentionPolicy.keepLast(20));
+		ImmutableTree<TestSemantics> first = concurrent.get();
+		for (int i = 0; i < 10; i++) {
+			concurrent.apply(append(0));
+		}
+		TreeSnapshots<TestSemantics> history = concurrent.get().treeSnapshots();
+
+		assertEquals(11, history.size());
+		assertSame(concurrent.get(), history.getRecent());
+		assertEquals(first, history.get(10));
+	}
+
+	@Test
+	public void publishedHistoryBounded() {
+		ConcurrentTree<TestSemantics> concurrent = new ConcurrentTree<>(initial());
+		for (int i = 0; i < 3 * ConcurrentTree.DEFAULT_HISTORY; i++) {
+			concurrent.apply(append(0));
+			assertTrue(concurrent.get().treeSnapshots().size() <= ConcurrentTree.DEFAULT_HISTORY);
+		}
+		TreeSnapshots<TestSemantics> history = concurrent.get().treeSnapshots();
+
+		assertEquals(ConcurrentTree.DEFAULT_HISTORY, history.size());
+		// the oldest retained version has all but the last DEFAULT_HISTORY - 1 leaves
+		ImmutableTree<TestSemantics> oldest = history.get(ConcurrentTree.DEFAULT_HISTORY - 1);
+		assertEquals(2 * ConcurrentTree.DEFAULT_HISTORY + 1, oldest.root().child(0).childCount());
+	}
+
+}
@@ -0,0 +1,110 @@
+package maciek.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the trees degenerated to the million-deep chain, which must not overflow the stack.
+ */
+public class DeepChainTest {
+
+	private static final int DEPTH = 1_000_000;
+
+	/**
+	 * The chain of nodes, each the only child of the previous one, the semantics value being the depth.
+	 */
+	private static MutableTree<TestSemantics> chain() {
+		TreeNodeFactory.Mutable<TestSemantics> factory = MutableTree.nodeFactory();
+		MutableTreeNode<TestSemantics> root = factory.createNode(new TestSemantics(0));
+		MutableTreeNode<TestSemantics> n = root;
+		for (int i = 1; i < DEPTH; i++) {
+			MutableTreeNode<TestSemantics> child = factory.createNode(new TestSemantics(i));
+			n.addChild(child);
+			n = child;
+		}
+		return new MutableTree<>(root, TreeSnapshots.empty());
+	}
+
+	/**
+	 * The deepest node of the tree.
+	 */
+	private static <N extends TreeNode<N, TestSemantics>> N deepest(Tree<?, N, TestSemantics> tree) {
+		N n = tree.root();
+		while (n.childCount() > 0) {
+			n = n.child(0);
+		}
+		return n;
+	}
+
+	@Test
+	public void mutableRootAndPath() {
+		MutableTree<TestSemantics> tree = chain();
+		MutableTreeNode<TestSemantics> deepest = deepest(tree);
+
+		assertSame(tree.root(), deepest.root());
+		assertEquals(DEPTH - 1, deepest.depth());
+		AbsoluteTreePath path = deepest.absoluteTreePath();
+		assertEquals(DEPTH - 1, path.length());
+		assertSame(deepest, tree.node(path));
+		assertEquals(DEPTH - 1, tree.root().descendants().size());
+	}
+
+	@Test
+	public void immutableRootAndPath() {
+		ImmutableTree<TestSemantics> tree = chain().immutable();
+		ImmutableTreeNode<TestSemantics> deepest = deepest(tree);
+
+		assertSame(tree.root(), deepest.root());
+		assertEquals(DEPTH - 1, deepest.depth());
+		assertEquals(DEPTH - 1, deepest.preOrderIndex());
+		AbsoluteTreePath path = deepest.absoluteTreePath();
+		assertEquals(DEPTH - 1, path.length());
+		assertEquals(DEPTH - 1, tree.node(path).semantics().value());
+		assertEquals(DEPTH - 1, tree.root().descendants().size());
+
+		ImmutableTreeNode<TestSemantics> middle = tree.kthAncestor(deepest, DEPTH / 2);
+		assertEquals(DEPTH / 2 - 1, middle.absoluteTreePath().length());
+		assertSame(middle, tree.lca(deepest, middle));
+	}
+
+	@Test
+	public void mapping() {
+		MutableTree<TestSemantics> mutable = chain();
+		ImmutableTree<TestSemantics> immutable = mutable.immutable();
+		MutableTree<TestSemantics> mutableAgain = immutable.mutable();
+
+		assertEquals(DEPTH - 1, deepest(mutableAgain).semantics().value());
+		assertEquals(immutable, mutableAgain.immutable());
+		assertEquals(immutable.hashCode(), mutableAgain.immutable().hashCode());
+		assertEquals(DEPTH - 2, immutable.root().child(0).subtree().root().descendants().size());
+	}
+
+	@Test
+	public void mapRepresentation() {
+		MutableTree<TestSemantics> tree = chain();
+		Map<AbsoluteTreePath, TestSemantics> map = tree.asMap();
+
+		assertEquals(DEPTH, map.size());
+		assertEquals(DEPTH - 1, map.get(deepest(tree).absoluteTreePath()).value());
+	}
+
+	@Test
+	public void parallelMapping() {
+		MutableTree<TestSemantics> mutable = chain();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ImmutableTree<TestSemantics> immutable = ImmutableTree.<TestSemantics>mapper().map(mutable, pool);
+			assertTrue(immutable.equals(mutable.immutable()));
+			assertEquals(DEPTH - 1, deepest(immutable).absoluteTreePath().length());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
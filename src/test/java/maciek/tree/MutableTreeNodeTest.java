@@ -0,0 +1,61 @@
+package maciek.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link MutableTreeNode} structure changes.
+ */
+public class MutableTreeNodeTest {
+
+	private final TreeNodeFactory.Mutable<TestSemantics> factory = MutableTree.nodeFactory();
+
+	private MutableTreeNode<TestSemantics> node(int value) {
+		return factory.createNode(new TestSemantics(value));
+	}
+
+	/**
+	 * Asserts the depth of each node of the subtree is its path length.
+	 */
+	private static void assertDepths(MutableTreeNode<TestSemantics> subtreeRoot) {
+		for (MutableTreeNode<TestSemantics> n : subtreeRoot.preOrder()) {
+			assertEquals(n.absoluteTreePath().length(), n.depth());
+		}
+	}
+
+	@Test
+	public void attachedSubtreeDepth() {
+		MutableTreeNode<TestSemantics> root = node(0);
+		MutableTreeNode<TestSemantics> x = node(1);
+		MutableTreeNode<TestSemantics> y = node(2);
+		x.addChild(y);
+		y.addChild(node(3));
+		root.addChild(x);
+
+		assertEquals(2, y.depth());
+		assertDepths(root);
+
+		// moved one level up and detached
+		root.addChild(y, 0);
+		assertEquals(1, y.depth());
+		assertDepths(root);
+		root.removeChild(0);
+		assertDepths(y);
+	}
+
+	@Test
+	public void insertedSubtreeDepth() {
+		MutableTreeNode<TestSemantics> root = node(0);
+		root.addChild(node(1));
+		MutableTreeNode<TestSemantics> x = node(2);
+		x.addChild(node(3));
+		root.child(0).insertChildren(new int[] { 0 }, List.of(x));
+
+		assertEquals(3, x.child(0).depth());
+		assertDepths(root);
+	}
+
+}
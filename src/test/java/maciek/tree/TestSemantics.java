@@ -0,0 +1,52 @@
+package maciek.tree;
+
+/**
+ * Simple immutable semantics used by the tests.
+ */
+public class TestSemantics implements TreeNodeSemantics<TestSemantics> {
+
+	/**
+	 * The semantic value.
+	 */
+	private final int value;
+
+	/**
+	 * Public constructor.
+	 */
+	public TestSemantics(int value) {
+		this.value = value;
+	}
+
+	/**
+	 * The semantic value.
+	 */
+	public int value() {
+		return value;
+	}
+
+	@Override
+	public TestSemantics copy(TreeNode<?, TestSemantics> newNode) {
+		return this;
+	}
+
+	@Override
+	public boolean isShareable() {
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return value;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof TestSemantics && ((TestSemantics) obj).value == value;
+	}
+
+	@Override
+	public String toString() {
+		return Integer.toString(value);
+	}
+
+}
@@ -0,0 +1,57 @@
+package maciek.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link TreeNodeQueryBatch} deduplication.
+ */
+public class TreeNodeQueryBatchTest {
+
+	/**
+	 * The root with the children valued by their index.
+	 */
+	private static ImmutableTree<TestSemantics> tree() {
+		TreeNodeFactory.Mutable<TestSemantics> factory = MutableTree.nodeFactory();
+		MutableTreeNode<TestSemantics> root = factory.createNode(new TestSemantics(-1));
+		for (int i = 0; i < 8; i++) {
+			root.addChild(factory.createNode(new TestSemantics(i)));
+		}
+		return new MutableTree<>(root, TreeSnapshots.empty()).immutable();
+	}
+
+	@Test
+	public void separatelyBuiltKeyQueries() {
+		TreeNodeIndex.Key<TestSemantics, Integer> key = TreeNodeIndex.sorted(TestSemantics::value);
+		List<TreeNodeQuery<TestSemantics>> queries = List.of(TreeNodeQuery.byKey(key, 3, null),
+				TreeNodeQuery.byKey(key, 3, null), TreeNodeQuery.byKeyRange(key, 3, 3, null),
+				TreeNodeQuery.byKeyRange(key, 3, 3, null), TreeNodeQuery.byKey(key, 4, null));
+		TreeNodeQueryBatch<TestSemantics> batch = new TreeNodeQueryBatch<>(queries);
+
+		assertEquals(3, batch.distinctQueries());
+		assertEquals(3, batch.distinctPredicates());
+		List<TreeNode<?, TestSemantics>> nodes = batch.queryNodes(tree());
+		assertEquals(3, nodes.get(0).semantics().value());
+		assertEquals(3, nodes.get(3).semantics().value());
+		assertEquals(4, nodes.get(4).semantics().value());
+	}
+
+	@Test
+	public void separatelyBuiltSelectorQueries() {
+		TreeSelector<TestSemantics> selector = TreeSelector.compile("/*/*[2]", name -> s -> true);
+		List<TreeNodeQuery<TestSemantics>> queries = List.of(TreeNodeQuery.bySelector(selector, null),
+				TreeNodeQuery.bySelector(selector, null));
+		TreeNodeQueryBatch<TestSemantics> batch = new TreeNodeQueryBatch<>(queries);
+
+		assertEquals(1, batch.distinctQueries());
+		ImmutableTree<TestSemantics> tree = tree();
+		List<TreeNode<?, TestSemantics>> nodes = batch.queryNodes(tree);
+		assertSame(nodes.get(0), nodes.get(1));
+		assertEquals(queries.get(0).queryNode(tree).semantics(), nodes.get(0).semantics());
+	}
+
+}
@@ -0,0 +1,74 @@
+package maciek.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link TreeSnapshots} history.
+ */
+public class TreeSnapshotsTest {
+
+	private static final int EDITS = 400;
+
+	private static final int RETAINED = 10;
+
+	/**
+	 * The root with a single child, edited in turns.
+	 */
+	private static ImmutableTree<TestSemantics> initial(TreeSnapshots<TestSemantics> history) {
+		TreeNodeFactory.Mutable<TestSemantics> factory = MutableTree.nodeFactory();
+		MutableTreeNode<TestSemantics> root = factory.createNode(new TestSemantics(-1));
+		root.addChild(factory.createNode(new TestSemantics(0)));
+		return new MutableTree<>(root, history).immutable();
+	}
+
+	@Test
+	public void evictedTreesReleased() throws InterruptedException {
+		TreeSnapshots<TestSemantics> history = TreeSnapshots.<TestSemantics>empty()
+				.withRetention(SnapshotRetentionPolicy.keepLast(RETAINED))
+				.withCheckpointInterval(4);
+		ImmutableTree<TestSemantics> tree = initial(history);
+		AbsoluteTreePath child = tree.root().child(0).absoluteTreePath();
+
+		List<WeakReference<ImmutableTree<TestSemantics>>> edited = new ArrayList<>();
+		for (int i = 1; i <= EDITS; i++) {
+			edited.add(new WeakReference<>(tree));
+			tree = tree.withSemantics(child, new TestSemantics(i));
+		}
+		assertEquals(RETAINED, tree.treeSnapshots().size());
+
+		// neither the checkpoints nor the evicted versions keep the trees the versions were taken of
+		for (int attempt = 0; attempt < 10 && edited.stream().anyMatch(r -> r.get() != null); attempt++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		for (WeakReference<ImmutableTree<TestSemantics>> reference : edited) {
+			assertNull(reference.get());
+		}
+		assertEquals(EDITS - 1, tree.treeSnapshots().get(1).root().child(0).semantics().value());
+	}
+
+	@Test
+	public void listedVersionsRebuiltOnce() {
+		ImmutableTree<TestSemantics> tree = initial(TreeSnapshots.empty());
+		AbsoluteTreePath child = tree.root().child(0).absoluteTreePath();
+		List<ImmutableTree<TestSemantics>> list = new ArrayList<>();
+		for (int i = 0; i < RETAINED; i++) {
+			list.add(0, tree);
+			tree = tree.withSemantics(child, new TestSemantics(i + 1));
+		}
+		TreeSnapshots<TestSemantics> history = new TreeSnapshots<>(list);
+
+		assertEquals(RETAINED, history.size());
+		assertEquals(0, history.get(RETAINED - 1).root().child(0).semantics().value());
+		assertSame(history.get(RETAINED - 1), history.get(RETAINED - 1));
+	}
+
+}